@@ -3,7 +3,7 @@ package ru.practicum.explore.with.me;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
-@SpringBootApplication(scanBasePackages = {"ru.practicum.explore.with.me", "ru.practicum.stats"})
+@SpringBootApplication
 public class MainApp {
     public static void main(String[] args) {
         SpringApplication.run(MainApp.class, args);
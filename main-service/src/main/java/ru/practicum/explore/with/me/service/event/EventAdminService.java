@@ -60,9 +60,8 @@ public class EventAdminService {
             return List.of();
         }
 
-        LocalDateTime startStats = eventList.getFirst().getCreatedOn().truncatedTo(ChronoUnit.SECONDS);
         LocalDateTime endStats = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
-        EventStatistics stats = eventService.getEventStatistics(eventList, startStats, endStats);
+        EventStatistics stats = eventService.getEventStatistics(eventList, null, endStats);
         List<EventFullDto> result = events.stream()
                 .map(event -> mapper.toFullDtoWithStats(event, stats))
                 .toList();
@@ -7,7 +7,6 @@ import ru.practicum.explore.with.me.model.event.dto.EventFullDto;
 import ru.practicum.explore.with.me.model.event.dto.EventRequestStatusUpdateRequest;
 import ru.practicum.explore.with.me.model.event.dto.EventRequestStatusUpdateResult;
 import ru.practicum.explore.with.me.model.event.dto.EventShortDto;
-import ru.practicum.explore.with.me.model.event.dto.EventViewsParameters;
 import ru.practicum.explore.with.me.model.event.dto.NewEventDto;
 import ru.practicum.explore.with.me.model.event.dto.UpdateEventUserRequest;
 import ru.practicum.explore.with.me.model.participation.ParticipationRequestDto;
@@ -27,7 +26,7 @@ public interface EventService {
 
     List<EventShortDto> getEventsByUser(long userId, int from, int count);
 
-    Map<Long, Long> getEventViews(EventViewsParameters params);
+    Map<Long, Long> getEventViews(Map<Long, LocalDateTime> eventStarts, LocalDateTime end);
 
     List<ParticipationRequestDto> getEventParticipationRequestsByUser(long userId, long eventId);
 
@@ -38,5 +37,9 @@ public interface EventService {
 
     Map<Long, Integer> getConfirmedRequests(List<Long> eventIds);
 
+    /**
+     * Counts the views of each event from its creation, or from {@code startStats} when that is later
+     * (null means from creation), until {@code endStats}.
+     */
     EventStatistics getEventStatistics(List<Event> events, LocalDateTime startStats, LocalDateTime endStats);
 }
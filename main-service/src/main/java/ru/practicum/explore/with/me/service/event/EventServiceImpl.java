@@ -24,7 +24,6 @@ import ru.practicum.explore.with.me.model.event.dto.EventRequestCount;
 import ru.practicum.explore.with.me.model.event.dto.EventRequestStatusUpdateRequest;
 import ru.practicum.explore.with.me.model.event.dto.EventRequestStatusUpdateResult;
 import ru.practicum.explore.with.me.model.event.dto.EventShortDto;
-import ru.practicum.explore.with.me.model.event.dto.EventViewsParameters;
 import ru.practicum.explore.with.me.model.event.dto.NewEventDto;
 import ru.practicum.explore.with.me.model.event.dto.StatusUpdateRequest;
 import ru.practicum.explore.with.me.model.event.dto.UpdateEventUserAction;
@@ -39,12 +38,14 @@ import ru.practicum.explore.with.me.repository.ParticipationRequestRepository;
 import ru.practicum.explore.with.me.repository.UserRepository;
 import ru.practicum.explore.with.me.util.ExistenceValidator;
 import ru.practicum.explore.with.me.util.StatsGetter;
-import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.StatWindowQuery;
+import ru.practicum.stats.dto.ViewWindowStats;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -165,9 +166,8 @@ public class EventServiceImpl implements ExistenceValidator<Event>, EventService
         if (events.isEmpty()) {
             return List.of();
         }
-        LocalDateTime startStats = events.getFirst().getCreatedOn().truncatedTo(ChronoUnit.SECONDS);
         LocalDateTime endStats = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
-        EventStatistics stats = getEventStatistics(events, startStats, endStats);
+        EventStatistics stats = getEventStatistics(events, null, endStats);
         List<EventShortDto> result = events.stream()
                 .map(event -> eventMapper.toShortDtoWithStats(event, stats))
                 .toList();
@@ -296,7 +296,7 @@ public class EventServiceImpl implements ExistenceValidator<Event>, EventService
         }
 
         LocalDateTime startStats = params.getRangeStart() != null ? params.getRangeStart().truncatedTo(ChronoUnit.SECONDS)
-                : events.getFirst().getCreatedOn().truncatedTo(ChronoUnit.SECONDS);
+                : null;
         LocalDateTime endStats = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
 
         EventStatistics stats = getEventStatistics(events, startStats, endStats);
@@ -308,14 +308,22 @@ public class EventServiceImpl implements ExistenceValidator<Event>, EventService
     }
 
     @Override
-    public Map<Long, Long> getEventViews(EventViewsParameters params) {
-        List<ViewStats> stats = statsGetter.getEventViewStats(params);
+    public Map<Long, Long> getEventViews(Map<Long, LocalDateTime> eventStarts, LocalDateTime end) {
+        List<StatWindowQuery> windows = eventStarts.entrySet().stream()
+                .map(eventStart -> StatWindowQuery.builder()
+                        .uri("/events/" + eventStart.getKey())
+                        .start(eventStart.getValue())
+                        .end(end)
+                        .unique(true)
+                        .build())
+                .toList();
+        List<ViewWindowStats> stats = statsGetter.getEventWindowViewStats(windows);
         Map<Long, Long> views = new HashMap<>();
         if (stats != null) {
-            for (ViewStats stat : stats) {
+            for (ViewWindowStats stat : stats) {
                 Long eventId = extractId(stat.getUri());
                 if (eventId != null) {
-                    views.put(eventId, stat.getHits());
+                    views.merge(eventId, stat.getHits(), Long::sum);
                 }
             }
         }
@@ -398,11 +406,13 @@ public class EventServiceImpl implements ExistenceValidator<Event>, EventService
         }
 
         List<Long> eventIds = events.stream().map(Event::getId).toList();
-        EventViewsParameters params = EventViewsParameters.builder()
-                .start(start)
-                .end(end)
-                .eventIds(eventIds).unique(true).build();
-        Map<Long, Long> viewStats = getEventViews(params);
+        Map<Long, LocalDateTime> eventStarts = new LinkedHashMap<>();
+        for (Event event : events) {
+            LocalDateTime createdOn = event.getCreatedOn().truncatedTo(ChronoUnit.SECONDS);
+            LocalDateTime eventStart = start != null && start.isAfter(createdOn) ? start : createdOn;
+            eventStarts.put(event.getId(), eventStart.isAfter(end) ? end : eventStart);
+        }
+        Map<Long, Long> viewStats = getEventViews(eventStarts, end);
         Map<Long, Integer> confirmedRequests = getConfirmedRequests(eventIds);
         EventStatistics result = new EventStatistics(viewStats, confirmedRequests);
         log.info("{}: result of getEventStatistics(): {}", className, result);
@@ -1,21 +1,152 @@
 package ru.practicum.explore.with.me.util;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
+import ru.practicum.stats.client.CachingStatClient;
+import ru.practicum.stats.client.ChunkingStatClient;
+import ru.practicum.stats.client.CircuitBreaker;
+import ru.practicum.stats.client.HitSpool;
+import ru.practicum.stats.client.ResilientStatClient;
+import ru.practicum.stats.client.ShardedStatClient;
 import ru.practicum.stats.client.StatClient;
 import ru.practicum.stats.client.StatClientImpl;
+import ru.practicum.stats.codec.StatBinaryMessageConverter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
 
 @Configuration
 public class StatClientConfig {
+    private static final String EMBEDDED_CLIENT_CLASS = "ru.practicum.stats.embedded.EmbeddedStatClient";
+
+    @Value("${stat.client.mode:REMOTE}")
+    private StatClientMode mode;
+    @Value("${stat.client.binary-format:false}")
+    private boolean binaryFormat;
+    @Value("${stat.client.connect-timeout-ms:1000}")
+    private int connectTimeoutMs;
+    @Value("${stat.client.read-timeout-ms:3000}")
+    private int readTimeoutMs;
+    @Value("${stat.client.resilience.enabled:true}")
+    private boolean resilienceEnabled;
+    @Value("${stat.client.breaker.failure-threshold:5}")
+    private int failureThreshold;
+    @Value("${stat.client.breaker.open-ms:10000}")
+    private long openMs;
+    @Value("${stat.client.spool.dir:stats-spool}")
+    private Path spoolDir;
+    @Value("${stat.client.spool.max-bytes:268435456}")
+    private long spoolMaxBytes;
+    @Value("${stat.client.spool.replay-batch-size:500}")
+    private int replayBatchSize;
+    @Value("${stat.client.spool.replay-interval-ms:5000}")
+    private long replayIntervalMs;
+
+    @Value("${stat.client.chunk.max-uris:200}")
+    private int chunkMaxUris;
+    @Value("${stat.client.chunk.parallelism:4}")
+    private int chunkParallelism;
+    @Value("${stat.client.cache.enabled:true}")
+    private boolean cacheEnabled;
+    @Value("${stat.client.cache.ttl-ms:1000}")
+    private long cacheTtlMs;
+    @Value("${stat.client.cache.max-stale-ms:5000}")
+    private long cacheMaxStaleMs;
+    @Value("${stat.client.cache.max-entries:10000}")
+    private int cacheMaxEntries;
 
     @Bean
-    public StatClient statClient(@Value("${stat.server-url}") String serverUrl) {
-        RestClient client = RestClient.builder()
+    public StatClient statClient(MeterRegistry meterRegistry,
+                                 Environment environment,
+                                 @Value("${stat.server-url}") String serverUrl,
+                                 @Value("${stat.client.shards:}") List<String> shardUrls,
+                                 @Value("${stat.client.virtual-nodes:128}") int virtualNodes) {
+        StatClient client;
+        if (mode == StatClientMode.EMBEDDED) {
+            // stat.embedded.* properties configure the in-process stats engine, e.g. its datasource
+            client = embeddedClient(Binder.get(environment)
+                    .bind("stat.embedded", Bindable.mapOf(String.class, String.class))
+                    .orElse(Map.of()));
+        } else if (shardUrls.isEmpty()) {
+            client = new ChunkingStatClient(serverClient(serverUrl, spoolDir), chunkMaxUris, chunkParallelism);
+        } else {
+            Map<String, StatClient> shards = new LinkedHashMap<>();
+            shardUrls.forEach(url -> shards.put(url,
+                    serverClient(url, spoolDir.resolve(url.replaceAll("[^A-Za-z0-9.-]", "_")))));
+            client = new ChunkingStatClient(new ShardedStatClient(shards, virtualNodes), chunkMaxUris,
+                    chunkParallelism);
+        }
+        if (!cacheEnabled) {
+            return client;
+        }
+
+        CachingStatClient cachingClient = new CachingStatClient(client, cacheTtlMs, cacheMaxStaleMs, cacheMaxEntries);
+        cacheCounter(meterRegistry, cachingClient, "hit", CachingStatClient::getHits);
+        cacheCounter(meterRegistry, cachingClient, "stale", CachingStatClient::getStaleHits);
+        cacheCounter(meterRegistry, cachingClient, "miss", CachingStatClient::getMisses);
+        cacheCounter(meterRegistry, cachingClient, "coalesced", CachingStatClient::getCoalesced);
+        Gauge.builder("stat.client.cache.size", cachingClient, CachingStatClient::size).register(meterRegistry);
+        return cachingClient;
+    }
+
+    private static void cacheCounter(MeterRegistry meterRegistry, CachingStatClient client, String result,
+                                     ToDoubleFunction<CachingStatClient> count) {
+        FunctionCounter.builder("stat.client.cache.requests", client, count)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts the in-process stats engine of the optional stats-embedded module, which is on the classpath
+     * only when main-service is built with the embedded-stats profile.
+     */
+    private static StatClient embeddedClient(Map<String, String> properties) {
+        Class<?> clientClass;
+        try {
+            clientClass = Class.forName(EMBEDDED_CLIENT_CLASS);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("stat.client.mode=EMBEDDED requires the stats-embedded module on the "
+                    + "classpath, build main-service with -Pembedded-stats", e);
+        }
+        try {
+            return (StatClient) clientClass.getMethod("start", Map.class).invoke(null, properties);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Failed to start the embedded stats engine", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to start the embedded stats engine", e);
+        }
+    }
+
+    private StatClient serverClient(String serverUrl, Path spoolDirectory) {
+        StatClient client = new StatClientImpl(restClient(serverUrl), binaryFormat, chunkMaxUris);
+        if (!resilienceEnabled) {
+            return client;
+        }
+        return new ResilientStatClient(client, new CircuitBreaker(serverUrl, failureThreshold, openMs),
+                new HitSpool(spoolDirectory, spoolMaxBytes), replayBatchSize, replayIntervalMs);
+    }
+
+    private RestClient restClient(String serverUrl) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeoutMs);
+        requestFactory.setReadTimeout(readTimeoutMs);
+        return RestClient.builder()
                 .baseUrl(serverUrl)
+                .requestFactory(requestFactory)
+                .messageConverters(converters -> converters.addFirst(new StatBinaryMessageConverter()))
                 .build();
-
-        return new StatClientImpl(client);
     }
 }
@@ -0,0 +1,6 @@
+package ru.practicum.explore.with.me.util;
+
+public enum StatClientMode {
+    REMOTE,
+    EMBEDDED
+}
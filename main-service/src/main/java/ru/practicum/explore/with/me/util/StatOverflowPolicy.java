@@ -0,0 +1,6 @@
+package ru.practicum.explore.with.me.util;
+
+public enum StatOverflowPolicy {
+    DROP_NEWEST,
+    DROP_OLDEST
+}
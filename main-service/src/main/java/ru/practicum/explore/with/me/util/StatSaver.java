@@ -1,24 +1,68 @@
 package ru.practicum.explore.with.me.util;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import ru.practicum.stats.client.StatClient;
 import ru.practicum.stats.dto.EndpointHitCreate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @Slf4j
 public class StatSaver {
     private final StatClient statClient;
+    private final AtomicLong droppedHits = new AtomicLong();
     @Value("${app}")
     private String app;
+    @Value("${stat.saver.queue-capacity:10000}")
+    private int queueCapacity;
+    @Value("${stat.saver.batch-size:100}")
+    private int batchSize;
+    @Value("${stat.saver.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+    @Value("${stat.saver.overflow-policy:DROP_NEWEST}")
+    private StatOverflowPolicy overflowPolicy;
+    @Value("${stat.saver.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+    private BlockingQueue<EndpointHitCreate> queue;
+    private Thread worker;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        worker = new Thread(this::drainQueue, "stat-saver");
+        worker.setDaemon(true);
+        worker.start();
+        log.info("STAT SAVER: started with queueCapacity={}, batchSize={}, flushIntervalMs={}, overflowPolicy={}",
+                queueCapacity, batchSize, flushIntervalMs, overflowPolicy);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.join(shutdownTimeoutMs);
+        if (worker.isAlive()) {
+            log.warn("STAT SAVER: worker did not drain the queue in {} ms, {} hits lost",
+                    shutdownTimeoutMs, queue.size());
+            worker.interrupt();
+        }
+        log.info("STAT SAVER: stopped, total dropped hits: {}", droppedHits.get());
+    }
 
     public void save(HttpServletRequest request, String controllerName) {
         EndpointHitCreate hitCreate = EndpointHitCreate.builder()
@@ -27,13 +71,67 @@ public class StatSaver {
                 .uri(request.getRequestURI())
                 .timestamp(LocalDateTime.now())
                 .build();
-        System.out.println(hitCreate);
         log.info("STAT SAVER: {} saving stats with endpoint: {}", controllerName, hitCreate.getUri());
-        ResponseEntity<Void> statResult = statClient.createHit(hitCreate);
-        if (statResult.getStatusCode().is2xxSuccessful()) {
-            log.info("STAT SAVER: {} stats saved successfully", controllerName);
-        } else {
-            log.info("STAT SAVER: {} error acquired when saving stats", controllerName);
+        if (!enqueue(hitCreate)) {
+            log.warn("STAT SAVER: {} queue is full, hit dropped: {}", controllerName, hitCreate.getUri());
+        }
+    }
+
+    public long getDroppedHits() {
+        return droppedHits.get();
+    }
+
+    private boolean enqueue(EndpointHitCreate hitCreate) {
+        if (queue.offer(hitCreate)) {
+            return true;
+        }
+        if (overflowPolicy == StatOverflowPolicy.DROP_OLDEST && queue.poll() != null) {
+            droppedHits.incrementAndGet();
+            return queue.offer(hitCreate);
+        }
+        droppedHits.incrementAndGet();
+        return false;
+    }
+
+    private void drainQueue() {
+        List<EndpointHitCreate> batch = new ArrayList<>(batchSize);
+        long flushDeadline = 0;
+        try {
+            while (running) {
+                long waitNanos = batch.isEmpty()
+                        ? TimeUnit.MILLISECONDS.toNanos(flushIntervalMs)
+                        : flushDeadline - System.nanoTime();
+                EndpointHitCreate hit = waitNanos > 0 ? queue.poll(waitNanos, TimeUnit.NANOSECONDS) : null;
+                if (hit != null) {
+                    if (batch.isEmpty()) {
+                        flushDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                    }
+                    batch.add(hit);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                if (batch.size() >= batchSize || (!batch.isEmpty() && System.nanoTime() >= flushDeadline)) {
+                    flush(batch);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.drainTo(batch);
+        while (!batch.isEmpty()) {
+            flush(batch.subList(0, Math.min(batchSize, batch.size())));
+        }
+    }
+
+    private void flush(List<EndpointHitCreate> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            statClient.createHits(List.copyOf(batch));
+            log.info("STAT SAVER: {} hits sent to stats service", batch.size());
+        } catch (RuntimeException e) {
+            log.warn("STAT SAVER: error acquired when saving {} hits: {}", batch.size(), e.getMessage());
         }
+        batch.clear();
     }
 }
@@ -3,9 +3,9 @@ package ru.practicum.explore.with.me.util;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
-import ru.practicum.explore.with.me.model.event.dto.EventViewsParameters;
 import ru.practicum.stats.client.StatClient;
-import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.StatWindowQuery;
+import ru.practicum.stats.dto.ViewWindowStats;
 
 import java.util.List;
 
@@ -15,12 +15,8 @@ import java.util.List;
 public class StatsGetter {
     private final StatClient statClient;
 
-    public List<ViewStats> getEventViewStats(EventViewsParameters params) {
-        log.info("STAT GETTER: get event view stats with params: {}", params);
-        return statClient.getStats(
-                params.getStart(),
-                params.getEnd(),
-                params.getEventIdUris(),
-                params.isUnique()).getBody();
+    public List<ViewWindowStats> getEventWindowViewStats(List<StatWindowQuery> windows) {
+        log.info("STAT GETTER: get event view stats for {} windows", windows.size());
+        return statClient.getBatchStats(windows).getBody();
     }
 }
@@ -0,0 +1,344 @@
+package ru.practicum.stats.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.StatWindowQuery;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewWindowStats;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-side cache for stats. Concurrent identical getStats calls share one in-flight request.
+ * Results are kept per (start, uris, unique) in an LRU of {@code maxEntries}, together with the
+ * end they were computed for. A cached result answers a later call whose end is at most
+ * {@code ttlMs} after the cached one, which covers the usual "until now" queries, as long as the
+ * result itself is not older than that either. Up to {@code maxStaleMs} beyond the ttl the
+ * cached result is still returned while a refresh runs in the background. Batch windows are cached
+ * and coalesced one by one like single-uri calls. Writes pass through.
+ */
+@Slf4j
+public class CachingStatClient implements StatClient, AutoCloseable {
+    private final StatClient delegate;
+    private final long ttlNanos;
+    private final long maxStaleNanos;
+    private final Map<CacheKey, CachedStats> cache;
+    private final ConcurrentMap<StatsRequest, CompletableFuture<ResponseEntity<List<ViewStats>>>> inFlight =
+            new ConcurrentHashMap<>();
+    private final Set<CacheKey> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refresher = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public CachingStatClient(StatClient delegate, long ttlMs, long maxStaleMs, int maxEntries) {
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.maxStaleNanos = TimeUnit.MILLISECONDS.toNanos(maxStaleMs);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedStats> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public ResponseEntity<Void> createHit(EndpointHitCreate endpointHitCreate) {
+        return delegate.createHit(endpointHitCreate);
+    }
+
+    @Override
+    public ResponseEntity<Void> createHits(List<EndpointHitCreate> endpointHitCreates) {
+        return delegate.createHits(endpointHitCreates);
+    }
+
+    @Override
+    public ResponseEntity<List<ViewStats>> getStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                    boolean unique) {
+        StatsRequest request = new StatsRequest(new CacheKey(start, List.copyOf(uris), unique), end);
+        List<StatsRequest> stale = new ArrayList<>(1);
+        List<ViewStats> cached = lookup(request, stale);
+        if (cached != null) {
+            stale.forEach(this::refreshInBackground);
+            return ResponseEntity.ok(cached);
+        }
+        return fetch(request);
+    }
+
+    /**
+     * Answers each window from the same cache as a single-uri getStats call and coalesces it with
+     * identical windows in flight; the remaining windows are fetched in one batch request.
+     */
+    @Override
+    public ResponseEntity<List<ViewWindowStats>> getBatchStats(List<StatWindowQuery> windows) {
+        if (windows.stream().anyMatch(window -> window.getUri() == null || window.getStart() == null
+                || window.getEnd() == null)) {
+            return delegate.getBatchStats(windows);
+        }
+        Map<StatsRequest, List<ViewStats>> answers = new HashMap<>();
+        Set<StatsRequest> missing = new LinkedHashSet<>();
+        List<StatsRequest> stale = new ArrayList<>();
+        for (StatWindowQuery window : windows) {
+            StatsRequest request = toRequest(window);
+            if (answers.containsKey(request) || missing.contains(request)) {
+                continue;
+            }
+            List<ViewStats> cached = lookup(request, stale);
+            if (cached != null) {
+                answers.put(request, cached);
+            } else {
+                missing.add(request);
+            }
+        }
+        refreshInBackground(stale);
+
+        ResponseEntity<List<ViewStats>> failure = null;
+        for (Map.Entry<StatsRequest, ResponseEntity<List<ViewStats>>> fetched : fetchAll(List.copyOf(missing)).entrySet()) {
+            ResponseEntity<List<ViewStats>> response = fetched.getValue();
+            if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+                failure = response;
+            } else {
+                answers.put(fetched.getKey(), response.getBody());
+            }
+        }
+        if (failure != null) {
+            return ResponseEntity.status(failure.getStatusCode()).headers(failure.getHeaders()).body(List.of());
+        }
+
+        List<ViewWindowStats> result = new ArrayList<>();
+        for (StatWindowQuery window : windows) {
+            StatsRequest request = toRequest(window);
+            answers.get(request).forEach(row -> result.add(new ViewWindowStats(row.getApp(), row.getUri(),
+                    request.key().start(), request.end(), request.key().unique(), row.getHits())));
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        refresher.close();
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private ResponseEntity<List<ViewStats>> fetch(StatsRequest request) {
+        CompletableFuture<ResponseEntity<List<ViewStats>>> own = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<List<ViewStats>>> existing = inFlight.putIfAbsent(request, own);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return join(existing);
+        }
+        misses.incrementAndGet();
+        try {
+            CacheKey key = request.key();
+            ResponseEntity<List<ViewStats>> result = delegate.getStats(key.start(), request.end(), key.uris(),
+                    key.unique());
+            if (result.getStatusCode().is2xxSuccessful() && result.getBody() != null) {
+                store(key, new CachedStats(request.end(), List.copyOf(result.getBody()), System.nanoTime()));
+            }
+            own.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(request, own);
+        }
+    }
+
+    /**
+     * Fetches the windows not already in flight with one batch request and waits for the others.
+     */
+    private Map<StatsRequest, ResponseEntity<List<ViewStats>>> fetchAll(List<StatsRequest> requests) {
+        Map<StatsRequest, CompletableFuture<ResponseEntity<List<ViewStats>>>> futures = new LinkedHashMap<>();
+        Map<StatsRequest, CompletableFuture<ResponseEntity<List<ViewStats>>>> own = new LinkedHashMap<>();
+        for (StatsRequest request : requests) {
+            CompletableFuture<ResponseEntity<List<ViewStats>>> future = new CompletableFuture<>();
+            CompletableFuture<ResponseEntity<List<ViewStats>>> existing = inFlight.putIfAbsent(request, future);
+            if (existing != null) {
+                coalesced.incrementAndGet();
+                futures.put(request, existing);
+            } else {
+                own.put(request, future);
+                futures.put(request, future);
+            }
+        }
+        if (!own.isEmpty()) {
+            misses.addAndGet(own.size());
+            try {
+                ResponseEntity<List<ViewWindowStats>> result = delegate.getBatchStats(own.keySet().stream()
+                        .map(request -> new StatWindowQuery(request.key().uris().getFirst(), request.key().start(),
+                                request.end(), request.key().unique()))
+                        .toList());
+                boolean ok = result.getStatusCode().is2xxSuccessful() && result.getBody() != null;
+                Map<StatsRequest, List<ViewStats>> rows = new HashMap<>();
+                if (ok) {
+                    result.getBody().forEach(row -> rows.computeIfAbsent(toRequest(new StatWindowQuery(row.getUri(),
+                            row.getStart(), row.getEnd(), row.isUnique())), request -> new ArrayList<>())
+                            .add(new ViewStats(row.getApp(), row.getUri(), row.getHits())));
+                }
+                own.forEach((request, future) -> {
+                    if (ok) {
+                        List<ViewStats> stats = rows.getOrDefault(request, List.of()).stream()
+                                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                                .toList();
+                        store(request.key(), new CachedStats(request.end(), stats, System.nanoTime()));
+                        future.complete(ResponseEntity.ok(stats));
+                    } else {
+                        future.complete(ResponseEntity.status(result.getStatusCode()).headers(result.getHeaders())
+                                .body(List.of()));
+                    }
+                });
+            } catch (RuntimeException e) {
+                own.values().forEach(future -> future.completeExceptionally(e));
+                throw e;
+            } finally {
+                own.forEach(inFlight::remove);
+            }
+        }
+        Map<StatsRequest, ResponseEntity<List<ViewStats>>> responses = new LinkedHashMap<>();
+        futures.forEach((request, future) -> responses.put(request, join(future)));
+        return responses;
+    }
+
+    /**
+     * The cached stats of the request, or null when they have to be fetched. Stats served past the
+     * ttl are returned and their request added to {@code stale} for a background refresh.
+     */
+    private List<ViewStats> lookup(StatsRequest request, List<StatsRequest> stale) {
+        CachedStats cached;
+        synchronized (cache) {
+            cached = cache.get(request.key());
+        }
+        if (cached == null || request.end().isBefore(cached.end())) {
+            return null;
+        }
+        long lag = Math.max(Duration.between(cached.end(), request.end()).toNanos(),
+                System.nanoTime() - cached.fetchedAt());
+        if (lag <= ttlNanos) {
+            hits.incrementAndGet();
+            return cached.stats();
+        }
+        if (lag <= ttlNanos + maxStaleNanos) {
+            staleHits.incrementAndGet();
+            stale.add(request);
+            return cached.stats();
+        }
+        return null;
+    }
+
+    private void refreshInBackground(StatsRequest request) {
+        if (!refreshing.add(request.key())) {
+            return;
+        }
+        refresher.execute(() -> {
+            try {
+                fetch(request);
+            } catch (RuntimeException e) {
+                log.warn("STAT CLIENT: background refresh of cached stats failed: {}", e.getMessage());
+            } finally {
+                refreshing.remove(request.key());
+            }
+        });
+    }
+
+    private void refreshInBackground(List<StatsRequest> requests) {
+        List<StatsRequest> refreshed = requests.stream()
+                .filter(request -> refreshing.add(request.key()))
+                .toList();
+        if (refreshed.isEmpty()) {
+            return;
+        }
+        refresher.execute(() -> {
+            try {
+                fetchAll(refreshed);
+            } catch (RuntimeException e) {
+                log.warn("STAT CLIENT: background refresh of cached stats failed: {}", e.getMessage());
+            } finally {
+                refreshed.forEach(request -> refreshing.remove(request.key()));
+            }
+        });
+    }
+
+    private static ResponseEntity<List<ViewStats>> join(CompletableFuture<ResponseEntity<List<ViewStats>>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The request of a batch window, which shares its cache entry with a getStats call for the
+     * window's uri. Timestamps are truncated to seconds, the precision the stats service answers with.
+     */
+    private static StatsRequest toRequest(StatWindowQuery window) {
+        return new StatsRequest(new CacheKey(window.getStart().truncatedTo(ChronoUnit.SECONDS),
+                List.of(window.getUri()), window.isUnique()), window.getEnd().truncatedTo(ChronoUnit.SECONDS));
+    }
+
+    private void store(CacheKey key, CachedStats stats) {
+        synchronized (cache) {
+            CachedStats current = cache.get(key);
+            if (current == null || !stats.end().isBefore(current.end())) {
+                cache.put(key, stats);
+            }
+        }
+    }
+
+    private record CacheKey(LocalDateTime start, List<String> uris, boolean unique) {
+    }
+
+    private record StatsRequest(CacheKey key, LocalDateTime end) {
+    }
+
+    private record CachedStats(LocalDateTime end, List<ViewStats> stats, long fetchedAt) {
+    }
+}
@@ -0,0 +1,111 @@
+package ru.practicum.stats.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.StatWindowQuery;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewWindowStats;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Splits getStats calls with more than {@code maxUris} uris into chunks of at most that many
+ * distinct uris, sends them in parallel on a pool of {@code parallelism} threads and merges the
+ * rows, which are disjoint per chunk, re-sorted by hits. getBatchStats calls are split the same
+ * way into chunks of at most {@code maxUris} windows. A failed chunk response is returned as the
+ * result of the whole call. Writes pass through.
+ */
+@Slf4j
+public class ChunkingStatClient implements StatClient, AutoCloseable {
+    private final StatClient delegate;
+    private final int maxUris;
+    private final ExecutorService executor;
+
+    public ChunkingStatClient(StatClient delegate, int maxUris, int parallelism) {
+        this.delegate = delegate;
+        this.maxUris = maxUris;
+        this.executor = Executors.newFixedThreadPool(parallelism, Thread.ofPlatform()
+                .name("stat-client-chunk-", 0)
+                .daemon(true)
+                .factory());
+    }
+
+    @Override
+    public ResponseEntity<Void> createHit(EndpointHitCreate endpointHitCreate) {
+        return delegate.createHit(endpointHitCreate);
+    }
+
+    @Override
+    public ResponseEntity<Void> createHits(List<EndpointHitCreate> endpointHitCreates) {
+        return delegate.createHits(endpointHitCreates);
+    }
+
+    @Override
+    public ResponseEntity<List<ViewStats>> getStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                    boolean unique) {
+        List<String> distinctUris = uris.stream().distinct().toList();
+        if (distinctUris.size() <= maxUris) {
+            return delegate.getStats(start, end, uris, unique);
+        }
+
+        log.info("STAT CLIENT: getStats() split {} uris into chunks of {}", distinctUris.size(), maxUris);
+        ResponseEntity<List<ViewStats>> result = inChunks(distinctUris,
+                chunk -> delegate.getStats(start, end, chunk, unique));
+        if (result.getStatusCode().is2xxSuccessful()) {
+            result.getBody().sort(Comparator.comparing(ViewStats::getHits).reversed());
+        }
+        return result;
+    }
+
+    @Override
+    public ResponseEntity<List<ViewWindowStats>> getBatchStats(List<StatWindowQuery> windows) {
+        if (windows.size() <= maxUris) {
+            return delegate.getBatchStats(windows);
+        }
+        log.info("STAT CLIENT: getBatchStats() split {} windows into chunks of {}", windows.size(), maxUris);
+        return inChunks(windows, delegate::getBatchStats);
+    }
+
+    @Override
+    public void close() throws Exception {
+        executor.shutdown();
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private <T, R> ResponseEntity<List<R>> inChunks(List<T> items, Function<List<T>, ResponseEntity<List<R>>> call) {
+        List<CompletableFuture<ResponseEntity<List<R>>>> futures = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += maxUris) {
+            List<T> chunk = items.subList(from, Math.min(from + maxUris, items.size()));
+            futures.add(CompletableFuture.supplyAsync(() -> call.apply(chunk), executor));
+        }
+
+        List<R> merged = new ArrayList<>();
+        for (CompletableFuture<ResponseEntity<List<R>>> future : futures) {
+            ResponseEntity<List<R>> result;
+            try {
+                result = future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+            if (!result.getStatusCode().is2xxSuccessful()) {
+                return result;
+            }
+            merged.addAll(result.getBody());
+        }
+        return ResponseEntity.ok(merged);
+    }
+}
@@ -0,0 +1,164 @@
+package ru.practicum.stats.client;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.stats.codec.StatBinaryCodec;
+import ru.practicum.stats.dto.EndpointHitCreate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Append-only local file of hit batches that could not be sent. Each record is an int length
+ * followed by a {@link StatBinaryCodec} hit batch. A replay first moves the spool aside, so new
+ * batches keep going to a fresh file, and records its progress in an offset file, so hits that
+ * were already delivered are not sent again after a restart. A torn record at the end of a file
+ * left by a crash is skipped.
+ */
+@Slf4j
+public class HitSpool {
+    private static final String ACTIVE_FILE = "hits.spool";
+    private static final String REPLAY_FILE = "hits.replay";
+    private static final String OFFSET_FILE = "hits.replay.offset";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Object appendLock = new Object();
+    private final AtomicLong droppedHits = new AtomicLong();
+
+    public HitSpool(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create hit spool directory " + directory, e);
+        }
+    }
+
+    /**
+     * Appends the hits, or drops them when the spool already holds {@code maxBytes}.
+     */
+    public boolean append(List<EndpointHitCreate> hits) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try {
+            StatBinaryCodec.writeHits(hits, payload);
+            ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + payload.size())
+                    .putInt(payload.size())
+                    .put(payload.toByteArray());
+            synchronized (appendLock) {
+                if (sizeBytes() + record.capacity() > maxBytes) {
+                    droppedHits.addAndGet(hits.size());
+                    log.warn("STAT CLIENT: spool {} is full, {} hits dropped", directory, hits.size());
+                    return false;
+                }
+                Files.write(directory.resolve(ACTIVE_FILE), record.array(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+        } catch (IOException e) {
+            droppedHits.addAndGet(hits.size());
+            log.warn("STAT CLIENT: failed to spool {} hits: {}", hits.size(), e.getMessage());
+            return false;
+        }
+        log.debug("STAT CLIENT: spooled {} hits to {}", hits.size(), directory);
+        return true;
+    }
+
+    /**
+     * Sends the spooled hits in batches of about {@code batchSize} until the sender returns false
+     * or the spool is empty.
+     *
+     * @return the number of hits sent
+     */
+    public synchronized long replay(int batchSize, Predicate<List<EndpointHitCreate>> sender) throws IOException {
+        Path replayFile = directory.resolve(REPLAY_FILE);
+        Path offsetFile = directory.resolve(OFFSET_FILE);
+        if (!Files.exists(replayFile)) {
+            synchronized (appendLock) {
+                Path active = directory.resolve(ACTIVE_FILE);
+                if (!Files.exists(active)) {
+                    return 0;
+                }
+                Files.move(active, replayFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.deleteIfExists(offsetFile);
+        }
+
+        long sent = 0;
+        try (FileChannel channel = FileChannel.open(replayFile, StandardOpenOption.READ)) {
+            long position = Files.exists(offsetFile)
+                    ? Long.parseLong(Files.readString(offsetFile, StandardCharsets.UTF_8).trim())
+                    : 0;
+            List<EndpointHitCreate> batch = new ArrayList<>();
+            List<EndpointHitCreate> hits;
+            do {
+                hits = readRecord(channel, position);
+                if (hits != null) {
+                    batch.addAll(hits);
+                    position = channel.position();
+                }
+                if (!batch.isEmpty() && (hits == null || batch.size() >= batchSize)) {
+                    if (!sender.test(List.copyOf(batch))) {
+                        return sent;
+                    }
+                    sent += batch.size();
+                    batch.clear();
+                    Files.writeString(offsetFile, Long.toString(position), StandardCharsets.UTF_8);
+                }
+            } while (hits != null);
+        }
+        Files.delete(replayFile);
+        Files.deleteIfExists(offsetFile);
+        return sent;
+    }
+
+    public long sizeBytes() throws IOException {
+        long size = 0;
+        for (String name : List.of(ACTIVE_FILE, REPLAY_FILE)) {
+            Path file = directory.resolve(name);
+            if (Files.exists(file)) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+
+    public long getDroppedHits() {
+        return droppedHits.get();
+    }
+
+    /**
+     * Reads the record at the position, or returns null at the end of the file or at a torn record.
+     */
+    private List<EndpointHitCreate> readRecord(FileChannel channel, long position) throws IOException {
+        long remaining = channel.size() - position;
+        if (remaining < Integer.BYTES) {
+            return null;
+        }
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        channel.read(length, position);
+        int size = length.flip().getInt();
+        if (size <= 0 || size > remaining - Integer.BYTES) {
+            log.warn("STAT CLIENT: skipping torn spool record at byte {}", position);
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        while (payload.hasRemaining()) {
+            channel.read(payload, position + Integer.BYTES + payload.position());
+        }
+        channel.position(position + Integer.BYTES + size);
+        return StatBinaryCodec.readHits(new ByteArrayInputStream(payload.array()));
+    }
+}
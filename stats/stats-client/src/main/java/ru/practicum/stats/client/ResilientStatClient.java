@@ -0,0 +1,207 @@
+package ru.practicum.stats.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.StatWindowQuery;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewWindowStats;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps callers independent of the stats service availability. Calls go through a
+ * {@link CircuitBreaker}; writes that fail or arrive while it is open are accepted and kept in a
+ * {@link HitSpool}, which a background thread replays in batches once the service answers again.
+ * Reads that cannot be served return an empty result with 503 instead of throwing. 404, 408 and 429
+ * count as the service being unavailable, and a write answered with 413 is spooled and replayed in
+ * smaller batches. Other client errors (4xx) are passed through, since retrying them would not
+ * help; only spooled hits rejected with 400 are dropped.
+ */
+@Slf4j
+public class ResilientStatClient implements StatClient, AutoCloseable {
+    private static final Set<HttpStatusCode> UNAVAILABLE_STATUSES = Set.of(HttpStatus.NOT_FOUND,
+            HttpStatus.REQUEST_TIMEOUT, HttpStatus.TOO_MANY_REQUESTS);
+
+    private final StatClient delegate;
+    private final CircuitBreaker circuitBreaker;
+    private final HitSpool spool;
+    private final int replayBatchSize;
+    private final ScheduledExecutorService replayer;
+
+    public ResilientStatClient(StatClient delegate, CircuitBreaker circuitBreaker, HitSpool spool,
+                               int replayBatchSize, long replayIntervalMs) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.spool = spool;
+        this.replayBatchSize = replayBatchSize;
+        this.replayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stat-spool-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        replayer.scheduleWithFixedDelay(this::replaySpool, replayIntervalMs, replayIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public ResponseEntity<Void> createHit(EndpointHitCreate endpointHitCreate) {
+        return write(List.of(endpointHitCreate), () -> delegate.createHit(endpointHitCreate));
+    }
+
+    @Override
+    public ResponseEntity<Void> createHits(List<EndpointHitCreate> endpointHitCreates) {
+        return write(endpointHitCreates, () -> delegate.createHits(endpointHitCreates));
+    }
+
+    @Override
+    public ResponseEntity<List<ViewStats>> getStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                    boolean unique) {
+        ResponseEntity<List<ViewStats>> result = call(() -> delegate.getStats(start, end, uris, unique));
+        if (result == null) {
+            log.warn("STAT CLIENT: stats service unavailable, getStats() answered with no stats");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(List.of());
+        }
+        return result;
+    }
+
+    @Override
+    public ResponseEntity<List<ViewWindowStats>> getBatchStats(List<StatWindowQuery> windows) {
+        ResponseEntity<List<ViewWindowStats>> result = call(() -> delegate.getBatchStats(windows));
+        if (result == null) {
+            log.warn("STAT CLIENT: stats service unavailable, getBatchStats() answered with no stats");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(List.of());
+        }
+        return result;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public HitSpool getSpool() {
+        return spool;
+    }
+
+    @Override
+    public void close() {
+        replayer.shutdownNow();
+    }
+
+    private ResponseEntity<Void> write(List<EndpointHitCreate> hits, Supplier<ResponseEntity<Void>> request) {
+        ResponseEntity<Void> result;
+        try {
+            result = call(request);
+        } catch (HttpClientErrorException.PayloadTooLarge e) {
+            result = null;
+        }
+        if (result != null) {
+            return result;
+        }
+        spool.append(hits);
+        return ResponseEntity.accepted().build();
+    }
+
+    /**
+     * Runs the request through the breaker, or returns null when it is open or the request fails.
+     * A 413 counts as a failure too but is thrown, so that a write can be split.
+     */
+    private <T> ResponseEntity<T> call(Supplier<ResponseEntity<T>> request) {
+        if (!circuitBreaker.tryAcquire()) {
+            return null;
+        }
+        try {
+            ResponseEntity<T> result = request.get();
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (HttpClientErrorException e) {
+            if (UNAVAILABLE_STATUSES.contains(e.getStatusCode())) {
+                circuitBreaker.onFailure();
+                log.warn("STAT CLIENT: stats service call failed: {}", e.getMessage());
+                return null;
+            }
+            if (e.getStatusCode() == HttpStatus.PAYLOAD_TOO_LARGE) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+            throw e;
+        } catch (RestClientException e) {
+            circuitBreaker.onFailure();
+            log.warn("STAT CLIENT: stats service call failed: {}", e.getMessage());
+            return null;
+        } catch (RuntimeException e) {
+            // releases a half-open trial, which would otherwise keep the breaker rejecting calls for good
+            circuitBreaker.onFailure();
+            throw e;
+        }
+    }
+
+    private void replaySpool() {
+        try {
+            long sent = spool.replay(replayBatchSize, this::replayBatch);
+            if (sent > 0) {
+                log.info("STAT CLIENT: replayed {} spooled hits", sent);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("STAT CLIENT: failed to replay the hit spool: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sends a spooled batch and returns whether the spool can move past it: it was delivered or
+     * dropped as invalid, or the part that was not delivered has been spooled again.
+     */
+    private boolean replayBatch(List<EndpointHitCreate> batch) {
+        List<EndpointHitCreate> unsent = new ArrayList<>();
+        send(batch, unsent);
+        if (unsent.isEmpty()) {
+            return true;
+        }
+        return unsent.size() < batch.size() && spool.append(unsent);
+    }
+
+    /**
+     * Sends the hits, halving them while the service answers 413. Once a part fails, it and every
+     * part after it are added to {@code unsent}.
+     */
+    private void send(List<EndpointHitCreate> hits, List<EndpointHitCreate> unsent) {
+        if (!unsent.isEmpty()) {
+            unsent.addAll(hits);
+            return;
+        }
+        try {
+            if (call(() -> delegate.createHits(hits)) == null) {
+                unsent.addAll(hits);
+            }
+        } catch (HttpClientErrorException.PayloadTooLarge e) {
+            if (hits.size() == 1) {
+                log.warn("STAT CLIENT: dropping a spooled hit too large for the stats service: {}", e.getMessage());
+                return;
+            }
+            int middle = hits.size() / 2;
+            send(hits.subList(0, middle), unsent);
+            send(hits.subList(middle, hits.size()), unsent);
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() != HttpStatus.BAD_REQUEST) {
+                log.warn("STAT CLIENT: keeping {} spooled hits the stats service refused: {}",
+                        hits.size(), e.getMessage());
+                unsent.addAll(hits);
+                return;
+            }
+            log.warn("STAT CLIENT: dropping {} spooled hits rejected by the stats service: {}",
+                    hits.size(), e.getMessage());
+        }
+    }
+}
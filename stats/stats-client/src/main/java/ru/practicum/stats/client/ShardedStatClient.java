@@ -0,0 +1,174 @@
+package ru.practicum.stats.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.StatWindowQuery;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewWindowStats;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Spreads hits over several stats-service instances by consistent hashing of the uri, so all hits
+ * of a uri live on one shard. Stats requests are split per shard, sent in parallel and merged:
+ * hits of the same app and uri are summed and the result is re-sorted by hits.
+ */
+@Slf4j
+public class ShardedStatClient implements StatClient, AutoCloseable {
+    private final Map<String, StatClient> shards;
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param shards       clients keyed by a stable shard name, usually the server url; a uri keeps
+     *                     its shard as long as that shard stays in the map
+     * @param virtualNodes ring points per shard, more points give a more even spread
+     */
+    public ShardedStatClient(Map<String, StatClient> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one stats shard is required");
+        }
+        this.shards = new LinkedHashMap<>(shards);
+        for (String shard : shards.keySet()) {
+            for (int node = 0; node < virtualNodes; node++) {
+                ring.put(hash(shard + "#" + node), shard);
+            }
+        }
+    }
+
+    public String shardFor(String uri) {
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(uri));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    @Override
+    public ResponseEntity<Void> createHit(EndpointHitCreate endpointHitCreate) {
+        return shards.get(shardFor(endpointHitCreate.getUri())).createHit(endpointHitCreate);
+    }
+
+    @Override
+    public ResponseEntity<Void> createHits(List<EndpointHitCreate> endpointHitCreates) {
+        Map<String, List<EndpointHitCreate>> batches = new LinkedHashMap<>();
+        for (EndpointHitCreate hit : endpointHitCreates) {
+            batches.computeIfAbsent(shardFor(hit.getUri()), shard -> new ArrayList<>()).add(hit);
+        }
+        List<ResponseEntity<Void>> results = scatter(batches, (shard, batch) -> shards.get(shard).createHits(batch));
+        return results.stream()
+                .filter(result -> !result.getStatusCode().is2xxSuccessful())
+                .findFirst()
+                .orElse(results.getFirst());
+    }
+
+    @Override
+    public ResponseEntity<List<ViewStats>> getStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                    boolean unique) {
+        Map<String, List<String>> shardUris = new LinkedHashMap<>();
+        if (uris.isEmpty()) {
+            shards.keySet().forEach(shard -> shardUris.put(shard, List.of()));
+        } else {
+            for (String uri : uris) {
+                shardUris.computeIfAbsent(shardFor(uri), shard -> new ArrayList<>()).add(uri);
+            }
+        }
+        log.info("STAT CLIENT: getStats() scattered to {} shards", shardUris.size());
+
+        Map<List<String>, ViewStats> merged = new LinkedHashMap<>();
+        for (ResponseEntity<List<ViewStats>> result : scatter(shardUris,
+                (shard, shardUriList) -> shards.get(shard).getStats(start, end, shardUriList, unique))) {
+            if (!result.getStatusCode().is2xxSuccessful()) {
+                return result;
+            }
+            for (ViewStats stats : result.getBody()) {
+                merged.merge(List.of(stats.getApp(), stats.getUri()),
+                        new ViewStats(stats.getApp(), stats.getUri(), stats.getHits()),
+                        (left, right) -> {
+                            left.setHits(left.getHits() + right.getHits());
+                            return left;
+                        });
+            }
+        }
+        return ResponseEntity.ok(merged.values().stream()
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList());
+    }
+
+    @Override
+    public ResponseEntity<List<ViewWindowStats>> getBatchStats(List<StatWindowQuery> windows) {
+        Map<String, List<StatWindowQuery>> shardWindows = new LinkedHashMap<>();
+        for (StatWindowQuery window : windows) {
+            shardWindows.computeIfAbsent(shardFor(window.getUri()), shard -> new ArrayList<>()).add(window);
+        }
+        if (shardWindows.isEmpty()) {
+            return ResponseEntity.ok(List.of());
+        }
+        List<ViewWindowStats> merged = new ArrayList<>();
+        for (ResponseEntity<List<ViewWindowStats>> result : scatter(shardWindows,
+                (shard, batch) -> shards.get(shard).getBatchStats(batch))) {
+            if (!result.getStatusCode().is2xxSuccessful()) {
+                return result;
+            }
+            merged.addAll(result.getBody());
+        }
+        return ResponseEntity.ok(merged);
+    }
+
+    @Override
+    public void close() throws Exception {
+        executor.close();
+        for (StatClient shard : shards.values()) {
+            if (shard instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private <T, R> List<R> scatter(Map<String, T> requests, ShardCall<T, R> call) {
+        if (requests.size() == 1) {
+            Map.Entry<String, T> request = requests.entrySet().iterator().next();
+            return List.of(call.apply(request.getKey(), request.getValue()));
+        }
+        List<CompletableFuture<R>> futures = requests.entrySet().stream()
+                .map(request -> CompletableFuture.supplyAsync(
+                        () -> call.apply(request.getKey(), request.getValue()), executor))
+                .toList();
+        try {
+            return futures.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static long hash(String value) {
+        // FNV-1a with a murmur finalizer to spread short, similar uris evenly over the ring
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @FunctionalInterface
+    private interface ShardCall<T, R> {
+        R apply(String shard, T request);
+    }
+}
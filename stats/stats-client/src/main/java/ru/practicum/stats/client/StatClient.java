@@ -2,7 +2,9 @@ package ru.practicum.stats.client;
 
 import org.springframework.http.ResponseEntity;
 import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.StatWindowQuery;
 import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewWindowStats;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -10,5 +12,9 @@ import java.util.List;
 public interface StatClient {
     ResponseEntity<Void> createHit(EndpointHitCreate endpointHitCreate);
 
+    ResponseEntity<Void> createHits(List<EndpointHitCreate> endpointHitCreates);
+
     ResponseEntity<List<ViewStats>> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+
+    ResponseEntity<List<ViewWindowStats>> getBatchStats(List<StatWindowQuery> windows);
 }
@@ -9,8 +9,12 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import ru.practicum.stats.codec.StatBinaryMessageConverter;
 import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.StatQueryRequest;
+import ru.practicum.stats.dto.StatWindowQuery;
 import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewWindowStats;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -19,6 +23,11 @@ import java.util.List;
 @Slf4j
 public class StatClientImpl implements StatClient {
     private final RestClient client;
+    private final boolean binaryFormat;
+    /**
+     * Longer uri lists are sent in the body of POST /stats/query instead of the query string.
+     */
+    private final int maxQueryParamUris;
     @Value("${stat.server-url}")
     private String serverUrl;
 
@@ -50,6 +59,29 @@ public class StatClientImpl implements StatClient {
         return result;
     }
 
+    public ResponseEntity<Void> createHits(List<EndpointHitCreate> endpointHitCreates) {
+        log.trace("STAT CLIENT: createHits() call with batch of size: {}", endpointHitCreates.size());
+
+        ResponseEntity<Void> result = client
+                .post()
+                .uri("/hits")
+                .contentType(binaryFormat ? StatBinaryMessageConverter.MEDIA_TYPE : MediaType.APPLICATION_JSON)
+                .body(endpointHitCreates, new ParameterizedTypeReference<List<EndpointHitCreate>>() {
+                })
+                .retrieve()
+                .toEntity(Void.class);
+
+        if (result.getStatusCode().is2xxSuccessful()) {
+            log.info("STAT CLIENT: createHits() success with status: {}, batch size: {}",
+                    result.getStatusCode(), endpointHitCreates.size());
+        } else {
+            log.warn("STAT CLIENT: createHits() failure with status: {}, batch size: {}",
+                    result.getStatusCode(), endpointHitCreates.size());
+        }
+
+        return result;
+    }
+
     public ResponseEntity<List<ViewStats>> getStats(LocalDateTime start,
                                                     LocalDateTime end,
                                                     List<String> uris,
@@ -57,8 +89,17 @@ public class StatClientImpl implements StatClient {
         log.info("STAT CLIENT: getStats() call with params: start={}, end={}, uris={}, unique={}",
                 start, end, uris, unique);
 
+        if (uris.size() > maxQueryParamUris) {
+            return queryStats(StatQueryRequest.builder()
+                    .start(start)
+                    .end(end)
+                    .uris(uris)
+                    .unique(unique)
+                    .build());
+        }
+
         UriComponentsBuilder builder = UriComponentsBuilder
-                .fromUriString(serverUrl + "/stats")
+                .fromPath("/stats")
                 .queryParam("start", start)
                 .queryParam("end", end)
                 .queryParam("unique", unique);
@@ -70,10 +111,65 @@ public class StatClientImpl implements StatClient {
         ResponseEntity<List<ViewStats>> result = client
                 .get()
                 .uri(path)
+                .accept(statsMediaTypes())
                 .retrieve()
                 .toEntity(new ParameterizedTypeReference<List<ViewStats>>() {
                 });
+        logStatsResult(result);
+        return result;
+    }
+
+    /**
+     * Sends the query in the request body, so the uri list is not limited by the url length.
+     */
+    public ResponseEntity<List<ViewStats>> queryStats(StatQueryRequest request) {
+        log.info("STAT CLIENT: queryStats() call with params: start={}, end={}, {} uris, unique={}",
+                request.getStart(), request.getEnd(), request.getUris() == null ? 0 : request.getUris().size(),
+                request.isUnique());
 
+        ResponseEntity<List<ViewStats>> result = client
+                .post()
+                .uri("/stats/query")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(statsMediaTypes())
+                .body(request)
+                .retrieve()
+                .toEntity(new ParameterizedTypeReference<List<ViewStats>>() {
+                });
+        logStatsResult(result);
+        return result;
+    }
+
+    public ResponseEntity<List<ViewWindowStats>> getBatchStats(List<StatWindowQuery> windows) {
+        log.info("STAT CLIENT: getBatchStats() call with {} windows", windows.size());
+
+        ResponseEntity<List<ViewWindowStats>> result = client
+                .post()
+                .uri("/stats/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(windows, new ParameterizedTypeReference<List<StatWindowQuery>>() {
+                })
+                .retrieve()
+                .toEntity(new ParameterizedTypeReference<List<ViewWindowStats>>() {
+                });
+
+        if (result.getStatusCode().is2xxSuccessful()) {
+            log.info("STAT CLIENT: getBatchStats() success with status: {}, body: {}",
+                    result.getStatusCode(), result.getBody());
+        } else {
+            log.info("STAT CLIENT: getBatchStats() failure with status: {}, body: {}",
+                    result.getStatusCode(), result.getBody());
+        }
+        return result;
+    }
+
+    private MediaType[] statsMediaTypes() {
+        return binaryFormat
+                ? new MediaType[]{StatBinaryMessageConverter.MEDIA_TYPE, MediaType.APPLICATION_JSON}
+                : new MediaType[]{MediaType.APPLICATION_JSON};
+    }
+
+    private void logStatsResult(ResponseEntity<List<ViewStats>> result) {
         if (result.getStatusCode().is2xxSuccessful()) {
             log.info("STAT CLIENT: getStats() success with status: {}, body: {}",
                     result.getStatusCode(), result.getBody());
@@ -81,7 +177,5 @@ public class StatClientImpl implements StatClient {
             log.info("STAT CLIENT: getStats() failure with status: {}, body: {}",
                     result.getStatusCode(), result.getBody());
         }
-
-        return result;
     }
 }
\ No newline at end of file
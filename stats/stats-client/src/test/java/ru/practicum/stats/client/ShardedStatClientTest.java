@@ -0,0 +1,224 @@
+package ru.practicum.stats.client;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestClient;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.StatWindowQuery;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewWindowStats;
+import ru.practicum.stats.service.StatApp;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs three stats-service instances on random ports and checks that {@link ShardedStatClient} keeps
+ * every uri on one shard, sends each shard only its part of a request and merges the shard answers.
+ */
+@SpringBootTest(classes = StatApp.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.url=jdbc:h2:mem:shard-0" + ShardedStatClientTest.DB_SETTINGS)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ShardedStatClientTest {
+    static final String DB_SETTINGS = ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=false";
+    private static final String APP = "ewm-main-service";
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final LocalDateTime END = START.plusDays(1);
+    private static final int URI_COUNT = 40;
+
+    private final List<ConfigurableApplicationContext> extraShards = new ArrayList<>();
+    private final Map<String, StatClient> shardClients = new LinkedHashMap<>();
+    private final Map<String, RecordingStatClient> recorders = new LinkedHashMap<>();
+    private final List<EndpointHitCreate> hits = new ArrayList<>();
+    private ShardedStatClient client;
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeAll
+    void startShards() {
+        List<Integer> ports = new ArrayList<>(List.of(port));
+        for (int shard = 1; shard <= 2; shard++) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(StatApp.class)
+                    .run("--server.port=0", "--spring.datasource.url=jdbc:h2:mem:shard-" + shard + DB_SETTINGS);
+            extraShards.add(context);
+            ports.add(((WebServerApplicationContext) context).getWebServer().getPort());
+        }
+        for (int shardPort : ports) {
+            String url = "http://localhost:" + shardPort;
+            StatClient shardClient = new StatClientImpl(RestClient.create(url), false, 200);
+            RecordingStatClient recorder = new RecordingStatClient(shardClient);
+            shardClients.put(url, shardClient);
+            recorders.put(url, recorder);
+        }
+        client = new ShardedStatClient(new LinkedHashMap<>(recorders), 128);
+
+        // uri i gets i hits from at most three ips, one per minute at half past
+        for (int uri = 1; uri <= URI_COUNT; uri++) {
+            for (int hit = 0; hit < uri; hit++) {
+                hits.add(new EndpointHitCreate(APP, uri(uri), "10.0.0." + hit % 3,
+                        START.plusMinutes(hit).plusSeconds(30)));
+            }
+        }
+        assertThat(client.createHits(hits).getStatusCode().is2xxSuccessful()).isTrue();
+    }
+
+    @AfterAll
+    void stopShards() throws Exception {
+        client.close();
+        extraShards.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void storesEveryUriOnItsShardOnly() {
+        for (Map.Entry<String, StatClient> shard : shardClients.entrySet()) {
+            Map<String, Long> expected = expectedStats(uris(), START, END, false).entrySet().stream()
+                    .filter(entry -> client.shardFor(entry.getKey()).equals(shard.getKey()))
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+            assertThat(expected).isNotEmpty();
+            assertThat(toMap(shard.getValue().getStats(START, END, List.of(), false).getBody()))
+                    .isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void sendsEveryShardOnlyItsUris() {
+        client.getStats(START, END, uris(), false);
+        client.getBatchStats(uris().stream()
+                .map(uri -> new StatWindowQuery(uri, START, END, false))
+                .toList());
+
+        for (Map.Entry<String, RecordingStatClient> shard : recorders.entrySet()) {
+            assertThat(shard.getValue().uris).isNotEmpty();
+            assertThat(shard.getValue().uris)
+                    .allMatch(uri -> client.shardFor(uri).equals(shard.getKey()));
+        }
+    }
+
+    @Test
+    void mergesStatsOfAllShards() {
+        for (boolean unique : List.of(false, true)) {
+            List<ViewStats> stats = client.getStats(START, END, uris(), unique).getBody();
+
+            assertThat(toMap(stats)).isEqualTo(expectedStats(uris(), START, END, unique));
+            assertThat(stats).isSortedAccordingTo((left, right) -> Long.compare(right.getHits(), left.getHits()));
+        }
+        assertThat(toMap(client.getStats(START, END, List.of(), false).getBody()))
+                .isEqualTo(expectedStats(uris(), START, END, false));
+    }
+
+    @Test
+    void mergesBatchStatsOfAllShards() {
+        List<StatWindowQuery> windows = new ArrayList<>();
+        for (int uri = 1; uri <= URI_COUNT; uri++) {
+            windows.add(new StatWindowQuery(uri(uri), START, START.plusMinutes(uri / 2), false));
+            windows.add(new StatWindowQuery(uri(uri), START.plusMinutes(uri / 3), END, true));
+        }
+
+        List<ViewWindowStats> stats = client.getBatchStats(windows).getBody();
+
+        Map<StatWindowQuery, Long> actual = new HashMap<>();
+        stats.forEach(row -> {
+            assertThat(row.getApp()).isEqualTo(APP);
+            actual.put(new StatWindowQuery(row.getUri(), row.getStart(), row.getEnd(), row.isUnique()),
+                    row.getHits());
+        });
+        Map<StatWindowQuery, Long> expected = new HashMap<>();
+        for (StatWindowQuery window : windows) {
+            Long hitCount = expectedStats(List.of(window.getUri()), window.getStart(), window.getEnd(),
+                    window.isUnique()).get(window.getUri());
+            if (hitCount != null) {
+                expected.put(window, hitCount);
+            }
+        }
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    private Map<String, Long> expectedStats(List<String> uris, LocalDateTime start, LocalDateTime end,
+                                            boolean unique) {
+        Map<String, Set<String>> ips = new HashMap<>();
+        Map<String, Long> counts = new HashMap<>();
+        hits.stream()
+                .filter(hit -> uris.contains(hit.getUri()))
+                .filter(hit -> !hit.getTimestamp().isBefore(start) && !hit.getTimestamp().isAfter(end))
+                .forEach(hit -> {
+                    ips.computeIfAbsent(hit.getUri(), uri -> new HashSet<>()).add(hit.getIp());
+                    counts.merge(hit.getUri(), 1L, Long::sum);
+                });
+        if (!unique) {
+            return counts;
+        }
+        return ips.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> (long) entry.getValue().size()));
+    }
+
+    private static Map<String, Long> toMap(List<ViewStats> stats) {
+        stats.forEach(row -> assertThat(row.getApp()).isEqualTo(APP));
+        return stats.stream().collect(Collectors.toMap(ViewStats::getUri, ViewStats::getHits));
+    }
+
+    private static List<String> uris() {
+        return IntStream.rangeClosed(1, URI_COUNT).mapToObj(ShardedStatClientTest::uri).toList();
+    }
+
+    private static String uri(int id) {
+        return "/events/" + id;
+    }
+
+    /**
+     * Passes calls to the shard and remembers the uris the shard was asked about.
+     */
+    private static class RecordingStatClient implements StatClient {
+        private final StatClient delegate;
+        private final Set<String> uris = ConcurrentHashMap.newKeySet();
+
+        RecordingStatClient(StatClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ResponseEntity<Void> createHit(EndpointHitCreate endpointHitCreate) {
+            uris.add(endpointHitCreate.getUri());
+            return delegate.createHit(endpointHitCreate);
+        }
+
+        @Override
+        public ResponseEntity<Void> createHits(List<EndpointHitCreate> endpointHitCreates) {
+            endpointHitCreates.forEach(hit -> uris.add(hit.getUri()));
+            return delegate.createHits(endpointHitCreates);
+        }
+
+        @Override
+        public ResponseEntity<List<ViewStats>> getStats(LocalDateTime start, LocalDateTime end, List<String> uriList,
+                                                        boolean unique) {
+            uris.addAll(uriList);
+            return delegate.getStats(start, end, uriList, unique);
+        }
+
+        @Override
+        public ResponseEntity<List<ViewWindowStats>> getBatchStats(List<StatWindowQuery> windows) {
+            windows.forEach(window -> uris.add(window.getUri()));
+            return delegate.getBatchStats(windows);
+        }
+    }
+}
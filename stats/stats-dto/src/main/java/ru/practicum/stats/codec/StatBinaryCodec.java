@@ -0,0 +1,189 @@
+package ru.practicum.stats.codec;
+
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.ViewStats;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of hit batches and stats results.
+ *
+ * <p>A message is a version byte followed by a varint row count and the rows. Strings are
+ * varint-length-prefixed UTF-8; app names and uris are interned per message, so a repeated value
+ * costs a single varint back-reference. Hit timestamps are zigzag varint deltas of epoch seconds
+ * (UTC) from the previous row.
+ */
+public final class StatBinaryCodec {
+    public static final String MEDIA_TYPE_VALUE = "application/x-stats-binary";
+
+    private static final int VERSION = 1;
+    private static final int MAX_STRING_BYTES = 64 * 1024;
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    private StatBinaryCodec() {
+    }
+
+    public static void writeHits(List<EndpointHitCreate> hits, OutputStream out) throws IOException {
+        out.write(VERSION);
+        writeVarLong(out, hits.size());
+        StringTable apps = new StringTable();
+        StringTable uris = new StringTable();
+        long previousSecond = 0;
+        for (EndpointHitCreate hit : hits) {
+            if (hit.getTimestamp() == null) {
+                throw new IllegalArgumentException("Hit timestamp must not be null");
+            }
+            long second = hit.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+            apps.write(out, hit.getApp());
+            uris.write(out, hit.getUri());
+            writeString(out, hit.getIp());
+            writeVarLong(out, zigzag(second - previousSecond));
+            previousSecond = second;
+        }
+    }
+
+    public static List<EndpointHitCreate> readHits(InputStream in) throws IOException {
+        int count = readHeader(in);
+        List<EndpointHitCreate> hits = new ArrayList<>(Math.min(count, MAX_INITIAL_CAPACITY));
+        List<String> apps = new ArrayList<>();
+        List<String> uris = new ArrayList<>();
+        long second = 0;
+        for (int i = 0; i < count; i++) {
+            String app = readInterned(in, apps);
+            String uri = readInterned(in, uris);
+            String ip = readString(in);
+            second += unzigzag(readVarLong(in));
+            hits.add(new EndpointHitCreate(app, uri, ip, LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC)));
+        }
+        return hits;
+    }
+
+    public static void writeStats(List<ViewStats> stats, OutputStream out) throws IOException {
+        out.write(VERSION);
+        writeVarLong(out, stats.size());
+        StringTable apps = new StringTable();
+        StringTable uris = new StringTable();
+        for (ViewStats row : stats) {
+            apps.write(out, row.getApp());
+            uris.write(out, row.getUri());
+            writeVarLong(out, row.getHits());
+        }
+    }
+
+    public static List<ViewStats> readStats(InputStream in) throws IOException {
+        int count = readHeader(in);
+        List<ViewStats> stats = new ArrayList<>(Math.min(count, MAX_INITIAL_CAPACITY));
+        List<String> apps = new ArrayList<>();
+        List<String> uris = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String app = readInterned(in, apps);
+            String uri = readInterned(in, uris);
+            stats.add(new ViewStats(app, uri, readVarLong(in)));
+        }
+        return stats;
+    }
+
+    private static int readHeader(InputStream in) throws IOException {
+        int version = readByte(in);
+        if (version != VERSION) {
+            throw new IOException("Unsupported stats binary format version: " + version);
+        }
+        long count = readVarLong(in);
+        if (count > Integer.MAX_VALUE) {
+            throw new IOException("Invalid row count: " + count);
+        }
+        return (int) count;
+    }
+
+    private static String readInterned(InputStream in, List<String> table) throws IOException {
+        long reference = readVarLong(in);
+        if (reference == 0) {
+            String value = readString(in);
+            table.add(value);
+            return value;
+        }
+        if (reference > table.size()) {
+            throw new IOException("Invalid string reference: " + reference);
+        }
+        return table.get((int) reference - 1);
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length > MAX_STRING_BYTES) {
+            throw new IOException("String of " + length + " bytes exceeds the limit of " + MAX_STRING_BYTES);
+        }
+        byte[] bytes = in.readNBytes((int) length);
+        if (bytes.length != length) {
+            throw new EOFException("Unexpected end of stats binary message");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            int b = readByte(in);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Unexpected end of stats binary message");
+        }
+        return b;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class StringTable {
+        private final Map<String, Integer> references = new HashMap<>();
+
+        void write(OutputStream out, String value) throws IOException {
+            Integer reference = references.get(value);
+            if (reference != null) {
+                writeVarLong(out, reference);
+                return;
+            }
+            writeVarLong(out, 0);
+            writeString(out, value);
+            references.put(value, references.size() + 1);
+        }
+    }
+}
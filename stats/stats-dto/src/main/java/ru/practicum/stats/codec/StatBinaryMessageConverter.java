@@ -0,0 +1,98 @@
+package ru.practicum.stats.codec;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.ViewStats;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Reads and writes {@code List<EndpointHitCreate>} and {@code List<ViewStats>} in the
+ * {@link StatBinaryCodec} format.
+ */
+public class StatBinaryMessageConverter extends AbstractGenericHttpMessageConverter<List<?>> {
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(StatBinaryCodec.MEDIA_TYPE_VALUE);
+
+    public StatBinaryMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return List.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return elementType(type) != null && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return supports(clazz) && canWrite(mediaType)
+                && (!(type instanceof ParameterizedType) || elementType(type) != null);
+    }
+
+    @Override
+    public List<?> read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return readList(elementType(type), inputMessage);
+    }
+
+    @Override
+    protected List<?> readInternal(Class<? extends List<?>> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Element type of the stats binary list is unknown", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(List<?> list, Type type, HttpOutputMessage outputMessage) throws IOException {
+        Class<?> elementType = elementType(type);
+        if (elementType == null && !list.isEmpty()) {
+            elementType = list.getFirst().getClass();
+        }
+        OutputStream out = new BufferedOutputStream(outputMessage.getBody());
+        if (elementType == null || elementType == EndpointHitCreate.class) {
+            StatBinaryCodec.writeHits(cast(list), out);
+        } else if (elementType == ViewStats.class) {
+            StatBinaryCodec.writeStats(cast(list), out);
+        } else {
+            throw new HttpMessageNotWritableException("Unsupported stats binary element type: " + elementType);
+        }
+        out.flush();
+    }
+
+    private List<?> readList(Class<?> elementType, HttpInputMessage inputMessage) throws IOException {
+        try {
+            BufferedInputStream in = new BufferedInputStream(inputMessage.getBody());
+            return elementType == ViewStats.class ? StatBinaryCodec.readStats(in) : StatBinaryCodec.readHits(in);
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("Malformed stats binary message: " + e.getMessage(), e,
+                    inputMessage);
+        }
+    }
+
+    private static Class<?> elementType(Type type) {
+        if (type instanceof ParameterizedType parameterized
+                && parameterized.getRawType() instanceof Class<?> raw && raw.isAssignableFrom(List.class)
+                && parameterized.getActualTypeArguments()[0] instanceof Class<?> element
+                && (element == EndpointHitCreate.class || element == ViewStats.class)) {
+            return element;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> cast(List<?> list) {
+        return (List<T>) list;
+    }
+}
@@ -0,0 +1,16 @@
+package ru.practicum.stats.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ViewTrend {
+    private String app;
+    private String uri;
+    private Long hits;
+    private Long previousHits;
+    private Long change;
+}
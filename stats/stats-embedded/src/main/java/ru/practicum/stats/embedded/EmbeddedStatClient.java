@@ -0,0 +1,208 @@
+package ru.practicum.stats.embedded;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.logging.LoggingApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import ru.practicum.stats.client.StatClient;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.StatWindowQuery;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewWindowStats;
+import ru.practicum.stats.service.StatApp;
+import ru.practicum.stats.service.StatQuery;
+import ru.practicum.stats.service.StatService;
+import ru.practicum.stats.service.exception.ErrorResponse;
+import ru.practicum.stats.service.exception.IngestOverloadedException;
+import ru.practicum.stats.service.exception.StatValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the stats engine of {@link StatApp} in the caller's JVM and answers {@link StatClient} calls
+ * directly from its {@link StatService}, without HTTP and JSON. The engine lives in its own
+ * application context without a web server, configured from {@code stats-embedded.properties} and
+ * the given properties only, so it does not pick up the settings or the datasource of the host
+ * application. Requests and responses are copied and timestamps truncated to seconds, and errors
+ * are thrown as the same HTTP client and server exceptions, so callers see what the remote client
+ * would return.
+ */
+@Slf4j
+public class EmbeddedStatClient implements StatClient, AutoCloseable {
+    private final ConfigurableApplicationContext context;
+    private final StatService statService;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+
+    private EmbeddedStatClient(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.statService = context.getBean(StatService.class);
+        this.validator = context.getBean(Validator.class);
+        this.objectMapper = context.getBean(ObjectMapper.class);
+    }
+
+    /**
+     * Starts the stats engine.
+     *
+     * @param properties stats-service properties, e.g. {@code spring.datasource.url}, which override
+     *                   the embedded defaults
+     */
+    public static EmbeddedStatClient start(Map<String, ?> properties) {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().remove(StandardEnvironment.SYSTEM_ENVIRONMENT_PROPERTY_SOURCE_NAME);
+        environment.getPropertySources().remove(StandardEnvironment.SYSTEM_PROPERTIES_PROPERTY_SOURCE_NAME);
+        Map<String, Object> embeddedProperties = new HashMap<>(properties);
+        embeddedProperties.put("spring.config.name", "stats-embedded");
+        environment.getPropertySources().addFirst(new MapPropertySource("statEmbedded", embeddedProperties));
+
+        SpringApplication application = new SpringApplicationBuilder(StatApp.class)
+                .main(StatApp.class)
+                .environment(environment)
+                .registerShutdownHook(false)
+                .build();
+        // the host application owns the logging system, re-initializing it would drop its settings
+        application.setListeners(application.getListeners().stream()
+                .filter(listener -> !(listener instanceof LoggingApplicationListener))
+                .toList());
+        log.info("STAT CLIENT: starting the embedded stats engine");
+        return new EmbeddedStatClient(application.run());
+    }
+
+    @Override
+    public ResponseEntity<Void> createHit(EndpointHitCreate endpointHitCreate) {
+        return createHits(List.of(endpointHitCreate));
+    }
+
+    @Override
+    public ResponseEntity<Void> createHits(List<EndpointHitCreate> endpointHitCreates) {
+        log.trace("STAT CLIENT: embedded createHits() call with batch of size: {}", endpointHitCreates.size());
+        List<EndpointHitCreate> hits = endpointHitCreates.stream()
+                .map(hit -> new EndpointHitCreate(hit.getApp(), hit.getUri(), hit.getIp(),
+                        hit.getTimestamp() == null ? null : hit.getTimestamp().truncatedTo(ChronoUnit.SECONDS)))
+                .toList();
+        call(() -> {
+            validate(hits);
+            statService.saveHits(hits);
+            return null;
+        });
+        return ResponseEntity.status(HttpStatus.CREATED).build();
+    }
+
+    @Override
+    public ResponseEntity<List<ViewStats>> getStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                    boolean unique) {
+        log.info("STAT CLIENT: embedded getStats() call with params: start={}, end={}, uris={}, unique={}",
+                start, end, uris, unique);
+        List<ViewStats> stats = call(() -> {
+            if (start == null || end == null) {
+                throw new StatValidationException("Start and end dates must not be null");
+            }
+            if (end.isBefore(start)) {
+                throw new StatValidationException("Start date must be before end date");
+            }
+            return statService.getStats(new StatQuery(start.truncatedTo(ChronoUnit.SECONDS),
+                    end.truncatedTo(ChronoUnit.SECONDS), uris, null, null, null, unique));
+        });
+        List<ViewStats> result = new ArrayList<>(stats.size());
+        stats.forEach(row -> result.add(new ViewStats(row.getApp(), row.getUri(), row.getHits())));
+        return ResponseEntity.ok(result);
+    }
+
+    @Override
+    public ResponseEntity<List<ViewWindowStats>> getBatchStats(List<StatWindowQuery> windows) {
+        log.info("STAT CLIENT: embedded getBatchStats() call with {} windows", windows.size());
+        List<StatWindowQuery> queries = windows.stream()
+                .map(window -> new StatWindowQuery(window.getUri(),
+                        window.getStart() == null ? null : window.getStart().truncatedTo(ChronoUnit.SECONDS),
+                        window.getEnd() == null ? null : window.getEnd().truncatedTo(ChronoUnit.SECONDS),
+                        window.isUnique()))
+                .toList();
+        List<ViewWindowStats> stats = call(() -> {
+            validate(queries);
+            return statService.getBatchStats(queries);
+        });
+        List<ViewWindowStats> result = new ArrayList<>(stats.size());
+        stats.forEach(row -> result.add(new ViewWindowStats(row.getApp(), row.getUri(), row.getStart(),
+                row.getEnd(), row.isUnique(), row.getHits())));
+        return ResponseEntity.ok(result);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    private <T> void validate(List<T> items) {
+        Set<ConstraintViolation<?>> violations = new HashSet<>();
+        items.forEach(item -> violations.addAll(validator.validate(item)));
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+    }
+
+    /**
+     * Runs the call and translates errors to the responses the stats-service error handler sends.
+     */
+    private <T> T call(Supplier<T> request) {
+        try {
+            return request.get();
+        } catch (StatValidationException | ConstraintViolationException | IllegalArgumentException e) {
+            String message = e instanceof ConstraintViolationException violations
+                    ? violations.getConstraintViolations().stream()
+                    .map(ConstraintViolation::getMessage)
+                    .collect(Collectors.joining(", "))
+                    : e.getMessage();
+            throw error(HttpStatus.BAD_REQUEST, HttpHeaders.EMPTY, message);
+        } catch (IngestOverloadedException e) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            throw error(HttpStatus.SERVICE_UNAVAILABLE, headers, e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("STAT CLIENT: embedded stats engine failed: {}", e.getMessage(), e);
+            throw error(HttpStatus.INTERNAL_SERVER_ERROR, HttpHeaders.EMPTY, e.getMessage());
+        }
+    }
+
+    /**
+     * Builds the exception a RestClient throws for the error response, with the same message.
+     */
+    private HttpStatusCodeException error(HttpStatus status, HttpHeaders headers, String message) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(new ErrorResponse(message));
+        } catch (JsonProcessingException e) {
+            body = new byte[0];
+        }
+        String text = status.value() + " " + status.getReasonPhrase() + ": \"" + new String(body,
+                StandardCharsets.UTF_8) + "\"";
+        return status.is4xxClientError()
+                ? HttpClientErrorException.create(text, status, status.getReasonPhrase(), headers, body,
+                StandardCharsets.UTF_8)
+                : HttpServerErrorException.create(text, status, status.getReasonPhrase(), headers, body,
+                StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,152 @@
+package ru.practicum.stats.embedded;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClient;
+import ru.practicum.stats.client.StatClient;
+import ru.practicum.stats.client.StatClientImpl;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.StatWindowQuery;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewWindowStats;
+import ru.practicum.stats.service.StatApp;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+/**
+ * Sends the same hits and queries to a running stats-service through {@link StatClientImpl} and to
+ * the in-process engine through {@link EmbeddedStatClient}, and expects the same answers and the
+ * same error exceptions from both.
+ */
+@SpringBootTest(classes = StatApp.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.url=jdbc:h2:mem:parity-remote;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;"
+                + "DATABASE_TO_UPPER=false")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class EmbeddedStatClientParityTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final LocalDateTime END = START.plusDays(3);
+
+    private StatClient remote;
+    private EmbeddedStatClient embedded;
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeAll
+    void start() {
+        remote = new StatClientImpl(RestClient.create("http://localhost:" + port), false, 200);
+        embedded = EmbeddedStatClient.start(Map.of("spring.datasource.url",
+                "jdbc:h2:mem:parity-embedded;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=false"));
+
+        List<EndpointHitCreate> hits = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            // fractions of a second are dropped by both clients
+            hits.add(new EndpointHitCreate(i % 4 == 0 ? "ewm-admin" : "ewm-main-service", "/events/" + i % 7,
+                    "192.168.0." + i % 11, START.plusMinutes(i * 13L).plusNanos(i * 1_000_000L)));
+        }
+        assertSame(client -> client.createHits(hits.subList(0, 299)));
+        assertSame(client -> client.createHit(hits.get(299)));
+    }
+
+    @AfterAll
+    void stop() {
+        embedded.close();
+    }
+
+    @Test
+    void answersStatsTheSame() {
+        assertThat(remote.getStats(START, END, List.of(), false).getBody()).hasSize(14);
+        for (boolean unique : List.of(false, true)) {
+            assertSame(client -> client.getStats(START, END, List.of(), unique));
+            assertSame(client -> client.getStats(START, END, List.of("/events/1", "/events/5"), unique));
+            assertSame(client -> client.getStats(START.plusHours(5), START.plusHours(30), List.of("/events/2"),
+                    unique));
+            assertSame(client -> client.getStats(START, END, List.of("/events/unknown"), unique));
+            assertSame(client -> client.getStats(START.plusSeconds(1).plusNanos(500_000_000L),
+                    START.plusMinutes(13).plusNanos(900_000_000L), List.of(), unique));
+        }
+    }
+
+    @Test
+    void answersBatchStatsTheSame() {
+        List<StatWindowQuery> windows = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            windows.add(new StatWindowQuery("/events/" + i, START.plusHours(i), START.plusHours(20L + i * 7), false));
+            windows.add(new StatWindowQuery("/events/" + i, START, END, true));
+        }
+        windows.add(new StatWindowQuery("/events/unknown", START, END, false));
+
+        assertSame(client -> client.getBatchStats(windows));
+        assertSame(client -> client.getBatchStats(List.of()));
+    }
+
+    @Test
+    void failsTheSame() {
+        assertSameError(client -> client.getStats(END, START, List.of(), false));
+        assertSameError(client -> client.createHit(new EndpointHitCreate("", "/events/1", "192.168.0.1", START)));
+        assertSameError(client -> client.createHits(List.of(
+                new EndpointHitCreate("ewm-main-service", "/events/1", "192.168.0.1".repeat(3), START))));
+        assertSameError(client -> client.getBatchStats(List.of(new StatWindowQuery("", START, END, false))));
+        assertSameError(client -> client.getBatchStats(List.of(new StatWindowQuery("/events/1", END, START, false))));
+    }
+
+    private void assertSame(Function<StatClient, ResponseEntity<?>> call) {
+        ResponseEntity<?> expected = call.apply(remote);
+        ResponseEntity<?> actual = call.apply(embedded);
+
+        assertThat(actual.getStatusCode()).isEqualTo(expected.getStatusCode());
+        assertThat(normalize(actual.getBody())).isEqualTo(normalize(expected.getBody()));
+        if (expected.getBody() instanceof List<?> rows && !rows.isEmpty() && rows.getFirst() instanceof ViewStats) {
+            assertThat(hits(actual.getBody())).isEqualTo(hits(expected.getBody()));
+        }
+    }
+
+    private void assertSameError(Function<StatClient, ResponseEntity<?>> call) {
+        HttpStatusCodeException expected = catchThrowableOfType(() -> call.apply(remote),
+                HttpStatusCodeException.class);
+        HttpStatusCodeException actual = catchThrowableOfType(() -> call.apply(embedded),
+                HttpStatusCodeException.class);
+
+        assertThat(expected).isNotNull();
+        assertThat(actual).isNotNull().isExactlyInstanceOf(expected.getClass());
+        assertThat(actual.getStatusCode()).isEqualTo(expected.getStatusCode());
+        assertThat(actual.getResponseBodyAsString()).isEqualTo(expected.getResponseBodyAsString());
+    }
+
+    private static List<Long> hits(Object body) {
+        return ((List<?>) body).stream()
+                .map(row -> ((ViewStats) row).getHits())
+                .toList();
+    }
+
+    /**
+     * Rows with equal hits may come in any order, so lists are compared as sorted copies.
+     */
+    private static Object normalize(Object body) {
+        if (!(body instanceof List<?> rows)) {
+            return body;
+        }
+        return rows.stream()
+                .map(row -> switch (row) {
+                    case ViewStats stats -> stats.getApp() + " " + stats.getUri() + " " + stats.getHits();
+                    case ViewWindowStats stats -> stats.getApp() + " " + stats.getUri() + " " + stats.getStart()
+                            + " " + stats.getEnd() + " " + stats.isUnique() + " " + stats.getHits();
+                    default -> String.valueOf(row);
+                })
+                .sorted()
+                .toList();
+    }
+}
@@ -0,0 +1,6 @@
+package ru.practicum.stats.service;
+
+import java.time.LocalDateTime;
+
+public record EncodedHit(int appId, int uriId, byte[] ip, LocalDateTime created) {
+}
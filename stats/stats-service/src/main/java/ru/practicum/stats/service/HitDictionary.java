@@ -0,0 +1,176 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process cache of the integer surrogate keys of apps and uris. New values are inserted
+ * in their own transaction, so a cached id always refers to a committed dictionary row.
+ */
+@Component
+@DependsOn("legacyHitsMigration")
+@Slf4j
+public class HitDictionary {
+    private static final Pattern RESOURCE_URI = Pattern.compile("^/[^/]+/(\\d{1,18})$");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final Entries apps = new Entries(
+            "INSERT INTO hit_apps (name) VALUES (?) ON CONFLICT DO NOTHING",
+            "SELECT id, name FROM hit_apps WHERE name = ANY(?)",
+            "SELECT name FROM hit_apps WHERE id = ?",
+            false);
+    private final Entries uris = new Entries(
+            "INSERT INTO hit_uris (uri, resource_id) VALUES (?, ?) ON CONFLICT DO NOTHING",
+            "SELECT id, uri AS name FROM hit_uris WHERE uri = ANY(?)",
+            "SELECT uri FROM hit_uris WHERE id = ?",
+            true);
+
+    public HitDictionary(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void load() {
+        jdbcTemplate.query("SELECT id, name FROM hit_apps", rs -> {
+            apps.put(rs.getString("name"), rs.getInt("id"));
+        });
+        jdbcTemplate.query("SELECT id, uri FROM hit_uris", rs -> {
+            uris.put(rs.getString("uri"), rs.getInt("id"));
+        });
+        log.info("STAT DICTIONARY: loaded {} apps and {} uris", apps.ids.size(), uris.ids.size());
+    }
+
+    public Map<String, Integer> resolveAppIds(Collection<String> names) {
+        return resolve(apps, names);
+    }
+
+    public Map<String, Integer> resolveUriIds(Collection<String> values) {
+        return resolve(uris, values);
+    }
+
+    public List<Integer> findUriIds(Collection<String> values) {
+        List<Integer> ids = new ArrayList<>();
+        List<String> uncached = new ArrayList<>();
+        for (String value : values) {
+            Integer id = uris.ids.get(value);
+            if (id != null) {
+                ids.add(id);
+            } else {
+                uncached.add(value);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            ids.addAll(lookup(uris, uncached).values());
+        }
+        return ids;
+    }
+
+    public Collection<String> uris() {
+        return List.copyOf(uris.ids.keySet());
+    }
+
+    public String appName(int id) {
+        return name(apps, id);
+    }
+
+    public String uri(int id) {
+        return name(uris, id);
+    }
+
+    public static Long parseResourceId(String uri) {
+        Matcher matcher = RESOURCE_URI.matcher(uri);
+        return matcher.matches() ? Long.valueOf(matcher.group(1)) : null;
+    }
+
+    private Map<String, Integer> resolve(Entries entries, Collection<String> values) {
+        Map<String, Integer> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String value : values) {
+            Integer id = entries.ids.get(value);
+            if (id != null) {
+                result.put(value, id);
+            } else {
+                missing.add(value);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        // inserted in a fixed order, so concurrent writers of overlapping values wait for each
+        // other instead of deadlocking on each other's uncommitted rows
+        missing.sort(null);
+        newTransaction.executeWithoutResult(status ->
+                jdbcTemplate.batchUpdate(entries.insertSql, missing, missing.size(), (ps, value) -> {
+                    ps.setString(1, value);
+                    if (entries.withResourceId) {
+                        ps.setObject(2, parseResourceId(value));
+                    }
+                }));
+        result.putAll(lookup(entries, missing));
+        return result;
+    }
+
+    /**
+     * Reads the ids of the values from the table and caches them; unknown values are left out.
+     */
+    private Map<String, Integer> lookup(Entries entries, Collection<String> values) {
+        Map<String, Integer> found = new HashMap<>();
+        jdbcTemplate.query(entries.selectIdsSql, rs -> {
+            String value = rs.getString("name");
+            int id = rs.getInt("id");
+            entries.put(value, id);
+            found.put(value, id);
+        }, (Object) values.toArray(String[]::new));
+        return found;
+    }
+
+    private String name(Entries entries, int id) {
+        String value = entries.values.get(id);
+        if (value != null) {
+            return value;
+        }
+        value = jdbcTemplate.queryForObject(entries.selectValueSql, String.class, id);
+        entries.put(value, id);
+        return value;
+    }
+
+    private static final class Entries {
+        private final String insertSql;
+        private final String selectIdsSql;
+        private final String selectValueSql;
+        private final boolean withResourceId;
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final Map<Integer, String> values = new ConcurrentHashMap<>();
+
+        private Entries(String insertSql, String selectIdsSql, String selectValueSql, boolean withResourceId) {
+            this.insertSql = insertSql;
+            this.selectIdsSql = selectIdsSql;
+            this.selectValueSql = selectValueSql;
+            this.withResourceId = withResourceId;
+        }
+
+        private void put(String value, Integer id) {
+            ids.put(value, id);
+            values.put(id, value);
+        }
+    }
+}
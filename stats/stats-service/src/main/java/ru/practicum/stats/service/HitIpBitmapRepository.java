@@ -0,0 +1,166 @@
+package ru.practicum.stats.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.service.sketch.IdBitmap;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Per (day, app, uri) bitmaps of the ip ids from {@link HitIpDictionary}, kept in
+ * {@code hit_ip_bitmaps} for the {@link UniqueMode#BITMAP} unique mode. A range is answered by
+ * OR-ing the bitmaps of its whole days and adding the distinct ips of the partial days at its
+ * edges, which gives an exact count without a COUNT(DISTINCT ip) over every raw hit.
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitIpBitmapRepository {
+    private static final RollupGranularity DAY = RollupGranularity.DAY;
+    private static final String INSERT_EMPTY = """
+            INSERT INTO hit_ip_bitmaps (bucket, app_id, uri_id, ip_ids)
+            VALUES (?, ?, ?, CAST('' AS BYTEA))
+            ON CONFLICT DO NOTHING
+            """;
+    private static final String BITMAP_KEY_FILTER = "bucket = ? AND app_id = ? AND uri_id = ?";
+    private static final String SELECT_BITMAPS_FOR_UPDATE = """
+            SELECT bucket, app_id, uri_id, ip_ids
+            FROM hit_ip_bitmaps
+            WHERE (bucket, app_id, uri_id) IN (%s)
+            ORDER BY bucket, app_id, uri_id
+            FOR UPDATE
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HitJdbcRepository hitJdbcRepository;
+    private final HitIpDictionary hitIpDictionary;
+    @Value("${stat.ingest.batch-size:500}")
+    private int batchSize;
+
+    public void merge(List<EncodedHit> hits) {
+        Map<ByteBuffer, Integer> ipIds = hitIpDictionary.resolveIds(
+                hits.stream().map(hit -> ByteBuffer.wrap(hit.ip())).distinct().toList());
+        Map<RollupKey, IdBitmap> bitmaps = new TreeMap<>();
+        for (EncodedHit hit : hits) {
+            bitmaps.computeIfAbsent(new RollupKey(DAY, DAY.floor(hit.created()), hit.appId(), hit.uriId()),
+                    key -> new IdBitmap()).add(ipIds.get(ByteBuffer.wrap(hit.ip())));
+        }
+        mergeBitmaps(bitmaps);
+    }
+
+    public void streamUniqueHits(LocalDateTime start, LocalDateTime end, List<Integer> uriIds,
+                                 Consumer<ViewStats> consumer) {
+        Map<HitGroupKey, IdBitmap> bitmaps = new HashMap<>();
+        LocalDateTime firstDay = DAY.floor(start).equals(start) ? start : DAY.floor(start).plusDays(1);
+        LocalDateTime lastDayEnd = DAY.floor(end);
+        List<QuerySegment> edges = new ArrayList<>();
+        if (firstDay.isBefore(lastDayEnd)) {
+            loadBitmaps(firstDay, lastDayEnd, uriIds, bitmaps);
+            if (start.isBefore(firstDay)) {
+                edges.add(QuerySegment.raw(start, firstDay, false));
+            }
+            edges.add(QuerySegment.raw(lastDayEnd, end, true));
+        } else {
+            edges.add(QuerySegment.raw(start, end, true));
+        }
+
+        Map<HitGroupKey, Set<ByteBuffer>> edgeIps = new HashMap<>();
+        for (QuerySegment edge : edges) {
+            hitJdbcRepository.forEachDistinctIp(edge, uriIds, null,
+                    (key, bucket, ip) -> edgeIps.computeIfAbsent(key, k -> new HashSet<>()).add(ip));
+        }
+        Set<ByteBuffer> allEdgeIps = new HashSet<>();
+        edgeIps.values().forEach(allEdgeIps::addAll);
+        Map<ByteBuffer, Integer> ipIds = hitIpDictionary.resolveIds(allEdgeIps);
+        edgeIps.forEach((key, ips) -> {
+            IdBitmap bitmap = bitmaps.computeIfAbsent(key, k -> new IdBitmap());
+            ips.forEach(ip -> bitmap.add(ipIds.get(ip)));
+        });
+
+        bitmaps.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().cardinality()))
+                .sorted(Map.Entry.<HitGroupKey, Long>comparingByValue().reversed())
+                .forEach(entry -> consumer.accept(hitJdbcRepository.toViewStats(entry.getKey().appId(),
+                        entry.getKey().uriId(), entry.getValue())));
+    }
+
+    public boolean isBackfillNeeded() {
+        Boolean bitmapsEmpty = jdbcTemplate.queryForObject(
+                "SELECT NOT EXISTS (SELECT 1 FROM hit_ip_bitmaps)", Boolean.class);
+        return Boolean.TRUE.equals(bitmapsEmpty) && hitJdbcRepository.hasRawHits();
+    }
+
+    public void rebuild() {
+        List<EncodedHit> dayHits = new ArrayList<>();
+        hitJdbcRepository.forEachEncodedHit(hit -> {
+            if (!dayHits.isEmpty() && !DAY.floor(hit.created()).equals(DAY.floor(dayHits.getFirst().created()))) {
+                merge(dayHits);
+                dayHits.clear();
+            }
+            dayHits.add(hit);
+        });
+        if (!dayHits.isEmpty()) {
+            merge(dayHits);
+        }
+    }
+
+    private void loadBitmaps(LocalDateTime from, LocalDateTime to, List<Integer> uriIds,
+                             Map<HitGroupKey, IdBitmap> bitmaps) {
+        List<Object> args = new ArrayList<>(List.of(from, to));
+        StringBuilder sql = new StringBuilder(
+                "SELECT app_id, uri_id, ip_ids FROM hit_ip_bitmaps WHERE bucket >= ? AND bucket < ?");
+        if (uriIds != null) {
+            sql.append(" AND uri_id = ANY(?)");
+            args.add(uriIds.toArray(Integer[]::new));
+        }
+        jdbcTemplate.query(sql.toString(), rs -> {
+            IdBitmap bitmap = IdBitmap.fromBytes(rs.getBytes("ip_ids"));
+            bitmaps.merge(new HitGroupKey(rs.getInt("app_id"), rs.getInt("uri_id")), bitmap, (left, right) -> {
+                left.or(right);
+                return left;
+            });
+        }, args.toArray());
+    }
+
+    private void mergeBitmaps(Map<RollupKey, IdBitmap> bitmaps) {
+        // rows are created first and then locked in key order, so concurrent batches serialize
+        // on a row instead of losing each other's ids; a MERGE that finds no row can still race
+        // another batch inserting the same key, ON CONFLICT lets the second insert do nothing
+        jdbcTemplate.batchUpdate(INSERT_EMPTY, bitmaps.keySet(), batchSize, (ps, key) -> {
+            ps.setObject(1, key.bucket());
+            ps.setInt(2, key.appId());
+            ps.setInt(3, key.uriId());
+        });
+        List<RollupKey> keys = List.copyOf(bitmaps.keySet());
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            List<RollupKey> chunk = keys.subList(from, Math.min(from + batchSize, keys.size()));
+            List<Object> args = new ArrayList<>(chunk.size() * 3);
+            chunk.forEach(key -> Collections.addAll(args, key.bucket(), key.appId(), key.uriId()));
+            jdbcTemplate.query(SELECT_BITMAPS_FOR_UPDATE.formatted(String.join(", ", Collections.nCopies(chunk.size(),
+                    "(?, ?, ?)"))), rs -> {
+                RollupKey key = new RollupKey(DAY, rs.getObject("bucket", LocalDateTime.class), rs.getInt("app_id"),
+                        rs.getInt("uri_id"));
+                bitmaps.get(key).or(IdBitmap.fromBytes(rs.getBytes("ip_ids")));
+            }, args.toArray());
+        }
+        jdbcTemplate.batchUpdate("UPDATE hit_ip_bitmaps SET ip_ids = ? WHERE " + BITMAP_KEY_FILTER,
+                bitmaps.entrySet(), batchSize, (ps, entry) -> {
+                    ps.setBytes(1, entry.getValue().toBytes());
+                    ps.setObject(2, entry.getKey().bucket());
+                    ps.setInt(3, entry.getKey().appId());
+                    ps.setInt(4, entry.getKey().uriId());
+                });
+    }
+}
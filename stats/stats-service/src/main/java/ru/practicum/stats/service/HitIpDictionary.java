@@ -0,0 +1,91 @@
+package ru.practicum.stats.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense integer ids of client ips for the unique-ip bitmaps. Unlike {@link HitDictionary} the
+ * ids are not preloaded; lookups go through a cache of up to {@code stat.unique.ip-cache-size}
+ * entries that is simply cleared when it fills up.
+ */
+@Component
+public class HitIpDictionary {
+    private static final int LOOKUP_CHUNK = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final Map<ByteBuffer, Integer> ids = new ConcurrentHashMap<>();
+    private final int cacheSize;
+
+    public HitIpDictionary(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                           @Value("${stat.unique.ip-cache-size:1000000}") int cacheSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Returns the ids of the ips, inserting the unknown ones.
+     */
+    public Map<ByteBuffer, Integer> resolveIds(Collection<ByteBuffer> ips) {
+        Map<ByteBuffer, Integer> result = findIds(ips);
+        // sorted for the same reason as in HitDictionary: a fixed insert order avoids deadlocks
+        List<ByteBuffer> missing = ips.stream().filter(ip -> !result.containsKey(ip)).distinct().sorted().toList();
+        if (missing.isEmpty()) {
+            return result;
+        }
+        newTransaction.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                "INSERT INTO hit_ips (ip) VALUES (?) ON CONFLICT DO NOTHING", missing, missing.size(),
+                (ps, ip) -> ps.setBytes(1, ip.array())));
+        result.putAll(findIds(missing));
+        return result;
+    }
+
+    /**
+     * Returns the ids of the known ips; unknown ips are left out.
+     */
+    public Map<ByteBuffer, Integer> findIds(Collection<ByteBuffer> ips) {
+        Map<ByteBuffer, Integer> result = new HashMap<>();
+        List<ByteBuffer> uncached = new ArrayList<>();
+        for (ByteBuffer ip : ips) {
+            Integer id = ids.get(ip);
+            if (id != null) {
+                result.put(ip, id);
+            } else {
+                uncached.add(ip);
+            }
+        }
+        for (int from = 0; from < uncached.size(); from += LOOKUP_CHUNK) {
+            List<ByteBuffer> chunk = uncached.subList(from, Math.min(from + LOOKUP_CHUNK, uncached.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("SELECT id, ip FROM hit_ips WHERE ip IN (" + placeholders + ")", rs -> {
+                ByteBuffer ip = ByteBuffer.wrap(rs.getBytes("ip"));
+                int id = rs.getInt("id");
+                result.put(ip, id);
+                cache(ip, id);
+            }, chunk.stream().map(ByteBuffer::array).toArray());
+        }
+        return result;
+    }
+
+    private void cache(ByteBuffer ip, int id) {
+        if (ids.size() >= cacheSize) {
+            ids.clear();
+        }
+        ids.put(ip, id);
+    }
+}
@@ -0,0 +1,694 @@
+package ru.practicum.stats.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewTimeSeries;
+import ru.practicum.stats.service.segment.HitSegmentStore;
+import ru.practicum.stats.service.sketch.HyperLogLog;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Collectors;
+
+@Repository
+@RequiredArgsConstructor
+public class HitJdbcRepository {
+    private static final String INSERT_HIT = "INSERT INTO %s (app_id, uri_id, ip, created) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_ROLLUP = """
+            INSERT INTO hit_rollups (granularity, bucket, app_id, uri_id, hits)
+            VALUES (?, ?, ?, ?, 0)
+            ON CONFLICT DO NOTHING
+            """;
+    private static final String ROLLUP_KEY_FILTER = "granularity = ? AND bucket = ? AND app_id = ? AND uri_id = ?";
+    private static final String INCREMENT_ROLLUP = "UPDATE hit_rollups SET hits = hits + ? WHERE " + ROLLUP_KEY_FILTER;
+    private static final String SELECT_SKETCHES = """
+            SELECT granularity, bucket, app_id, uri_id, ip_sketch
+            FROM hit_rollups
+            WHERE (granularity, bucket, app_id, uri_id) IN (%s)
+            """;
+    private static final String UPDATE_SKETCH = "UPDATE hit_rollups SET ip_sketch = ? WHERE " + ROLLUP_KEY_FILTER;
+    private static final String SELECT_DAY_HITS =
+            "SELECT app_id, uri_id, ip, created FROM %s WHERE created >= ? AND created < ? ORDER BY created";
+    private static final String SELECT_LEGACY_DAYS = "SELECT DISTINCT CAST(created AS DATE) AS day FROM hits";
+    private static final String REBUILD_ROLLUPS = """
+            INSERT INTO hit_rollups (granularity, bucket, app_id, uri_id, hits)
+            SELECT ?, DATE_TRUNC('%1$s', created), app_id, uri_id, COUNT(*)
+            FROM %2$s
+            GROUP BY DATE_TRUNC('%1$s', created), app_id, uri_id
+            """;
+    private static final int MAX_UNION_SEGMENTS = 200;
+    private static final int REBUILD_SEALED_CHUNK = 50000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HitDictionary hitDictionary;
+    private final HitPartitions hitPartitions;
+    private final Optional<HitSegmentStore> hitSegmentStore;
+    @Value("${stat.ingest.batch-size:500}")
+    private int batchSize;
+    @Value("${stat.query.fetch-size:1000}")
+    private int fetchSize;
+
+    public List<EncodedHit> saveAll(List<EndpointHitCreate> hits) {
+        List<byte[]> ips = hits.stream().map(hit -> IpAddresses.toBytes(hit.getIp())).toList();
+        Map<String, Integer> appIds = hitDictionary.resolveAppIds(
+                hits.stream().map(EndpointHitCreate::getApp).distinct().toList());
+        Map<String, Integer> uriIds = hitDictionary.resolveUriIds(
+                hits.stream().map(EndpointHitCreate::getUri).distinct().toList());
+        List<EncodedHit> encoded = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            EndpointHitCreate hit = hits.get(i);
+            encoded.add(new EncodedHit(appIds.get(hit.getApp()), uriIds.get(hit.getUri()), ips.get(i),
+                    hit.getTimestamp()));
+        }
+
+        Map<LocalDate, List<EncodedHit>> byDay = encoded.stream()
+                .collect(Collectors.groupingBy(hit -> hit.created().toLocalDate(), TreeMap::new, Collectors.toList()));
+        hitPartitions.read(() -> {
+            byDay.forEach((day, dayHits) -> {
+                String table = hitPartitions.tableFor(day);
+                if (table == null) {
+                    // late hits of a day retention has dropped only go to the rollups
+                    return;
+                }
+                jdbcTemplate.batchUpdate(INSERT_HIT.formatted(table), dayHits, batchSize, (ps, hit) -> {
+                    ps.setInt(1, hit.appId());
+                    ps.setInt(2, hit.uriId());
+                    ps.setBytes(3, hit.ip());
+                    ps.setObject(4, hit.created());
+                });
+            });
+            return null;
+        });
+        mergeRollups(encoded);
+        return encoded;
+    }
+
+    public void streamHits(List<QuerySegment> segments, List<Integer> uriIds, Consumer<ViewStats> consumer) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, SUM(hits) AS total FROM (");
+        for (int i = 0; i < segments.size(); i++) {
+            QuerySegment segment = segments.get(i);
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            if (segment.isRaw()) {
+                sql.append("SELECT app_id, uri_id, COUNT(*) AS hits FROM ").append(source(segment)).append(" WHERE ");
+                appendFilter(sql, args, segment, uriIds);
+                sql.append(" GROUP BY app_id, uri_id");
+            } else {
+                sql.append("SELECT app_id, uri_id, hits FROM hit_rollups WHERE ");
+                appendFilter(sql, args, segment, uriIds);
+            }
+        }
+        sql.append(") t GROUP BY app_id, uri_id ORDER BY total DESC");
+
+        Map<HitGroupKey, Long> sealed = new HashMap<>();
+        forEachSealedHit(segments, uriIds,
+                hit -> sealed.merge(new HitGroupKey(hit.appId(), hit.uriId()), 1L, Long::sum));
+        if (sealed.isEmpty()) {
+            streamTotals(sql.toString(), args, consumer);
+            return;
+        }
+        queryTotals(sql.toString(), args, (key, total) -> sealed.merge(key, total, Long::sum));
+        sealed.entrySet().stream()
+                .sorted(Map.Entry.<HitGroupKey, Long>comparingByValue().reversed())
+                .forEach(entry -> consumer.accept(toViewStats(entry.getKey().appId(), entry.getKey().uriId(),
+                        entry.getValue())));
+    }
+
+    public List<ViewStats> findApproximateUniqueHits(List<QuerySegment> segments, List<Integer> uriIds) {
+        return findUniqueSketches(segments, uriIds).entrySet().stream()
+                .map(entry -> toViewStats(entry.getKey().appId(), entry.getKey().uriId(), entry.getValue().estimate()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+
+    public Map<HitGroupKey, HyperLogLog> findUniqueSketches(List<QuerySegment> segments, List<Integer> uriIds) {
+        return findRangeSketches(List.of(segments), Collections.singletonList(uriIds)).getFirst();
+    }
+
+    /**
+     * Sketches of several ranges, each given by its segments and uri filter, read with one
+     * statement per {@link #MAX_UNION_SEGMENTS} segments.
+     */
+    public List<Map<HitGroupKey, HyperLogLog>> findRangeSketches(List<List<QuerySegment>> ranges,
+                                                                 List<List<Integer>> uriIds) {
+        List<Map<HitGroupKey, HyperLogLog>> sketches = new ArrayList<>(ranges.size());
+        ranges.forEach(range -> sketches.add(new HashMap<>()));
+        forEachUnion(ranges, (from, to) -> {
+            List<Object> args = new ArrayList<>();
+            StringBuilder sql = new StringBuilder();
+            for (int part = from; part < to; part++) {
+                for (QuerySegment segment : ranges.get(part)) {
+                    if (!args.isEmpty()) {
+                        sql.append(" UNION ALL ");
+                    }
+                    if (segment.isRaw()) {
+                        sql.append("SELECT DISTINCT CAST(? AS INTEGER) AS part, app_id, uri_id, ")
+                                .append("CAST(NULL AS BYTEA) AS ip_sketch, ip FROM ")
+                                .append(source(segment)).append(" WHERE ");
+                    } else {
+                        sql.append("SELECT CAST(? AS INTEGER) AS part, app_id, uri_id, ip_sketch, ")
+                                .append("CAST(NULL AS BYTEA) AS ip FROM hit_rollups WHERE ");
+                    }
+                    args.add(part);
+                    appendFilter(sql, args, segment, uriIds.get(part));
+                }
+            }
+            jdbcTemplate.query(sql.toString(), rs -> {
+                HyperLogLog sketch = sketches.get(rs.getInt("part")).computeIfAbsent(
+                        new HitGroupKey(rs.getInt("app_id"), rs.getInt("uri_id")), key -> new HyperLogLog());
+                byte[] ip = rs.getBytes("ip");
+                if (ip != null) {
+                    sketch.add(ip);
+                } else {
+                    sketch.merge(HyperLogLog.fromBytes(rs.getBytes("ip_sketch")));
+                }
+            }, args.toArray());
+        });
+        for (int part = 0; part < ranges.size(); part++) {
+            Map<HitGroupKey, HyperLogLog> partSketches = sketches.get(part);
+            forEachSealedHit(ranges.get(part), uriIds.get(part), hit -> partSketches.computeIfAbsent(
+                    new HitGroupKey(hit.appId(), hit.uriId()), key -> new HyperLogLog()).add(hit.ip()));
+        }
+        return sketches;
+    }
+
+    /**
+     * Hit totals of several ranges, each given by its segments and uri filter, read with one
+     * statement per {@link #MAX_UNION_SEGMENTS} segments. With {@code distinctIps} the ranges must
+     * be single raw segments without sealed hits, and the totals are their distinct ips.
+     */
+    public List<Map<HitGroupKey, Long>> findRangeTotals(List<List<QuerySegment>> ranges, List<List<Integer>> uriIds,
+                                                        boolean distinctIps) {
+        List<Map<HitGroupKey, Long>> totals = new ArrayList<>(ranges.size());
+        ranges.forEach(range -> totals.add(new HashMap<>()));
+        forEachUnion(ranges, (from, to) -> {
+            List<Object> args = new ArrayList<>();
+            StringBuilder sql = new StringBuilder("SELECT part, app_id, uri_id, SUM(hits) AS total FROM (");
+            for (int part = from; part < to; part++) {
+                for (QuerySegment segment : ranges.get(part)) {
+                    if (!args.isEmpty()) {
+                        sql.append(" UNION ALL ");
+                    }
+                    if (segment.isRaw()) {
+                        sql.append("SELECT CAST(? AS INTEGER) AS part, app_id, uri_id, ")
+                                .append(distinctIps ? "COUNT(DISTINCT ip)" : "COUNT(*)").append(" AS hits FROM ")
+                                .append(source(segment)).append(" WHERE ");
+                        args.add(part);
+                        appendFilter(sql, args, segment, uriIds.get(part));
+                        sql.append(" GROUP BY app_id, uri_id");
+                    } else {
+                        sql.append("SELECT CAST(? AS INTEGER) AS part, app_id, uri_id, hits FROM hit_rollups WHERE ");
+                        args.add(part);
+                        appendFilter(sql, args, segment, uriIds.get(part));
+                    }
+                }
+            }
+            sql.append(") t GROUP BY part, app_id, uri_id");
+            jdbcTemplate.query(sql.toString(), rs -> {
+                totals.get(rs.getInt("part")).put(new HitGroupKey(rs.getInt("app_id"), rs.getInt("uri_id")),
+                        rs.getLong("total"));
+            }, args.toArray());
+        });
+        if (!distinctIps) {
+            for (int part = 0; part < ranges.size(); part++) {
+                Map<HitGroupKey, Long> partTotals = totals.get(part);
+                forEachSealedHit(ranges.get(part), uriIds.get(part),
+                        hit -> partTotals.merge(new HitGroupKey(hit.appId(), hit.uriId()), 1L, Long::sum));
+            }
+        }
+        return totals;
+    }
+
+    public void streamExactUniqueHits(LocalDateTime start, LocalDateTime end, List<Integer> uriIds,
+                                      Consumer<ViewStats> consumer) {
+        List<Object> args = new ArrayList<>();
+        QuerySegment segment = QuerySegment.raw(start, end, true);
+        if (hasSealedHits(segment)) {
+            // distinct ips of a uri may be split between the live tables and the sealed files
+            Map<HitGroupKey, Set<ByteBuffer>> ips = new HashMap<>();
+            forEachDistinctIp(segment, uriIds, null,
+                    (key, bucket, ip) -> ips.computeIfAbsent(key, k -> new HashSet<>()).add(ip));
+            ips.entrySet().stream()
+                    .sorted(Comparator.comparingInt((Map.Entry<HitGroupKey, Set<ByteBuffer>> entry) ->
+                            entry.getValue().size()).reversed())
+                    .forEach(entry -> consumer.accept(toViewStats(entry.getKey().appId(), entry.getKey().uriId(),
+                            entry.getValue().size())));
+            return;
+        }
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, COUNT(DISTINCT ip) AS total FROM ")
+                .append(source(segment)).append(" WHERE ");
+        appendFilter(sql, args, segment, uriIds);
+        sql.append(" GROUP BY app_id, uri_id ORDER BY total DESC");
+        streamTotals(sql.toString(), args, consumer);
+    }
+
+    public List<ViewTimeSeries> findTimeSeries(List<QuerySegment> segments, RollupGranularity step,
+                                               LocalDateTime firstBucket, int bucketCount, List<Integer> uriIds) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < segments.size(); i++) {
+            QuerySegment segment = segments.get(i);
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            if (segment.isRaw()) {
+                appendRawTimeSeries(sql, args, segment, step, uriIds, "COUNT(*)");
+            } else {
+                sql.append("SELECT bucket, app_id, uri_id, hits FROM hit_rollups WHERE ");
+                appendFilter(sql, args, segment, uriIds);
+            }
+        }
+
+        Map<HitGroupKey, long[]> series = new HashMap<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            int bucket = (int) step.getUnit().between(firstBucket,
+                    step.floor(rs.getObject("bucket", LocalDateTime.class)));
+            series.computeIfAbsent(new HitGroupKey(rs.getInt("app_id"), rs.getInt("uri_id")),
+                    key -> new long[bucketCount])[bucket] += rs.getLong("hits");
+        }, args.toArray());
+        forEachSealedHit(segments, uriIds, hit -> series.computeIfAbsent(new HitGroupKey(hit.appId(), hit.uriId()),
+                key -> new long[bucketCount])[(int) step.getUnit().between(firstBucket, step.floor(hit.created()))]++);
+        return toTimeSeries(series, step, firstBucket);
+    }
+
+    public List<ViewTimeSeries> findApproximateUniqueTimeSeries(List<QuerySegment> segments, RollupGranularity step,
+                                                                LocalDateTime firstBucket, int bucketCount,
+                                                                List<Integer> uriIds) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < segments.size(); i++) {
+            QuerySegment segment = segments.get(i);
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            if (segment.isRaw()) {
+                sql.append("SELECT DISTINCT DATE_TRUNC('").append(step.name().toLowerCase())
+                        .append("', created) AS bucket, app_id, uri_id, CAST(NULL AS VARCHAR(8)) AS granularity, ")
+                        .append("CAST(NULL AS BYTEA) AS ip_sketch, ip FROM ").append(source(segment)).append(" WHERE ");
+            } else {
+                sql.append("SELECT bucket, app_id, uri_id, granularity, ip_sketch, CAST(NULL AS BYTEA) AS ip ")
+                        .append("FROM hit_rollups WHERE ");
+            }
+            appendFilter(sql, args, segment, uriIds);
+        }
+
+        // whole buckets come from a single rollup sketch; only the partial edge buckets are merged
+        Map<HitGroupKey, long[]> series = new HashMap<>();
+        Map<HitGroupKey, Map<Integer, HyperLogLog>> edgeSketches = new HashMap<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            HitGroupKey key = new HitGroupKey(rs.getInt("app_id"), rs.getInt("uri_id"));
+            int bucket = (int) step.getUnit().between(firstBucket,
+                    step.floor(rs.getObject("bucket", LocalDateTime.class)));
+            series.computeIfAbsent(key, k -> new long[bucketCount]);
+            byte[] ip = rs.getBytes("ip");
+            if (ip == null && step.name().equals(rs.getString("granularity"))) {
+                series.get(key)[bucket] = HyperLogLog.fromBytes(rs.getBytes("ip_sketch")).estimate();
+                return;
+            }
+            HyperLogLog sketch = edgeSketches.computeIfAbsent(key, k -> new HashMap<>())
+                    .computeIfAbsent(bucket, b -> new HyperLogLog());
+            if (ip != null) {
+                sketch.add(ip);
+            } else {
+                sketch.merge(HyperLogLog.fromBytes(rs.getBytes("ip_sketch")));
+            }
+        }, args.toArray());
+        forEachSealedHit(segments, uriIds, hit -> {
+            HitGroupKey key = new HitGroupKey(hit.appId(), hit.uriId());
+            series.computeIfAbsent(key, k -> new long[bucketCount]);
+            edgeSketches.computeIfAbsent(key, k -> new HashMap<>())
+                    .computeIfAbsent((int) step.getUnit().between(firstBucket, step.floor(hit.created())),
+                            b -> new HyperLogLog())
+                    .add(hit.ip());
+        });
+        edgeSketches.forEach((key, sketches) -> sketches.forEach(
+                (bucket, sketch) -> series.get(key)[bucket] = sketch.estimate()));
+        return toTimeSeries(series, step, firstBucket);
+    }
+
+    public List<ViewTimeSeries> findExactUniqueTimeSeries(LocalDateTime start, LocalDateTime end,
+                                                          RollupGranularity step, LocalDateTime firstBucket,
+                                                          int bucketCount, List<Integer> uriIds) {
+        QuerySegment segment = QuerySegment.raw(start, end, true);
+        Map<HitGroupKey, long[]> series = new HashMap<>();
+        if (hasSealedHits(segment)) {
+            Map<HitGroupKey, Map<Integer, Set<ByteBuffer>>> ips = new HashMap<>();
+            forEachDistinctIp(segment, uriIds, step, (key, bucket, ip) -> ips.computeIfAbsent(key, k -> new HashMap<>())
+                    .computeIfAbsent((int) step.getUnit().between(firstBucket, bucket), b -> new HashSet<>()).add(ip));
+            ips.forEach((key, buckets) -> {
+                long[] counts = series.computeIfAbsent(key, k -> new long[bucketCount]);
+                buckets.forEach((bucket, bucketIps) -> counts[bucket] = bucketIps.size());
+            });
+            return toTimeSeries(series, step, firstBucket);
+        }
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        appendRawTimeSeries(sql, args, segment, step, uriIds, "COUNT(DISTINCT ip)");
+
+        jdbcTemplate.query(sql.toString(), rs -> {
+            int bucket = (int) step.getUnit().between(firstBucket, rs.getObject("bucket", LocalDateTime.class));
+            series.computeIfAbsent(new HitGroupKey(rs.getInt("app_id"), rs.getInt("uri_id")),
+                    key -> new long[bucketCount])[bucket] = rs.getLong("hits");
+        }, args.toArray());
+        return toTimeSeries(series, step, firstBucket);
+    }
+
+    @Transactional(readOnly = true)
+    public void forEachHit(Consumer<EndpointHitCreate> consumer) {
+        forEachEncodedHit(hit -> consumer.accept(new EndpointHitCreate(
+                hitDictionary.appName(hit.appId()),
+                hitDictionary.uri(hit.uriId()),
+                IpAddresses.toString(hit.ip()),
+                hit.created())));
+    }
+
+    @Transactional(readOnly = true)
+    void forEachEncodedHit(Consumer<EncodedHit> consumer) {
+        hitSegmentStore.ifPresent(store -> store.forEach(consumer));
+        forEachTableHit(consumer);
+    }
+
+    /**
+     * Visits the hits in the tables one day at a time, in day order, with a query per day that
+     * fetches {@code stat.query.fetch-size} rows at a time, so a scan of the whole history never
+     * holds more than a fetch of it. The Postgres driver only uses a cursor inside a transaction.
+     */
+    private void forEachTableHit(Consumer<EncodedHit> consumer) {
+        NavigableSet<LocalDate> days = new TreeSet<>(hitPartitions.days());
+        jdbcTemplate.query(SELECT_LEGACY_DAYS, rs -> {
+            days.add(rs.getObject("day", LocalDate.class));
+        });
+        for (LocalDate day : days) {
+            LocalDateTime from = day.atStartOfDay();
+            String sql = SELECT_DAY_HITS.formatted(hitPartitions.source(from, from));
+            jdbcTemplate.query(fetching(sql, List.of(from, from.plusDays(1))), rs -> {
+                consumer.accept(new EncodedHit(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getBytes("ip"),
+                        rs.getObject("created", LocalDateTime.class)));
+            });
+        }
+    }
+
+    public LocalDateTime findLatestRollupBucket(RollupGranularity granularity) {
+        return jdbcTemplate.queryForObject("SELECT MAX(bucket) FROM hit_rollups WHERE granularity = ?",
+                LocalDateTime.class, granularity.name());
+    }
+
+    public void forEachRollup(RollupGranularity granularity, LocalDateTime from,
+                              BiConsumer<LocalDateTime, ViewStats> consumer) {
+        jdbcTemplate.query("SELECT bucket, app_id, uri_id, hits FROM hit_rollups WHERE granularity = ? AND bucket >= ?",
+                rs -> {
+                    consumer.accept(rs.getObject("bucket", LocalDateTime.class),
+                            toViewStats(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+                }, granularity.name(), from);
+    }
+
+    public boolean isRollupBackfillNeeded() {
+        Boolean rollupsEmpty = jdbcTemplate.queryForObject(
+                "SELECT NOT EXISTS (SELECT 1 FROM hit_rollups)", Boolean.class);
+        return Boolean.TRUE.equals(rollupsEmpty) && hasRawHits();
+    }
+
+    public boolean hasRawHits() {
+        if (hitSegmentStore.isPresent() && !hitSegmentStore.get().isEmpty()) {
+            return true;
+        }
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + hitPartitions.source() + ")", Boolean.class));
+    }
+
+    public int deleteLegacyHitsBefore(LocalDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM hits WHERE created < ?", cutoff);
+    }
+
+    public int deleteRollupsBefore(RollupGranularity granularity, LocalDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM hit_rollups WHERE granularity = ? AND bucket < ?",
+                granularity.name(), cutoff);
+    }
+
+    public void rebuildRollups() {
+        read(() -> {
+            rebuildRollupsFromTables();
+            rebuildRollupsFromSegments();
+            return null;
+        });
+    }
+
+    private void rebuildRollupsFromTables() {
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            String sql = REBUILD_ROLLUPS.formatted(granularity.name().toLowerCase(), hitPartitions.source());
+            jdbcTemplate.update(sql, granularity.name());
+        }
+
+        Map<RollupKey, HyperLogLog> daySketches = new TreeMap<>();
+        LocalDateTime[] currentDay = new LocalDateTime[1];
+        forEachTableHit(hit -> {
+            LocalDateTime day = RollupGranularity.DAY.floor(hit.created());
+            if (!day.equals(currentDay[0])) {
+                updateSketches(daySketches);
+                daySketches.clear();
+                currentDay[0] = day;
+            }
+            addToSketches(daySketches, hit);
+        });
+        updateSketches(daySketches);
+    }
+
+    /**
+     * Adds the sealed days on top of the rollups rebuilt from the tables, which can also hold
+     * late hits of a sealed day.
+     */
+    private void rebuildRollupsFromSegments() {
+        List<EncodedHit> sealedHits = new ArrayList<>(REBUILD_SEALED_CHUNK);
+        hitSegmentStore.ifPresent(store -> store.forEach(hit -> {
+            sealedHits.add(hit);
+            if (sealedHits.size() == REBUILD_SEALED_CHUNK) {
+                mergeRollups(sealedHits);
+                sealedHits.clear();
+            }
+        }));
+        if (!sealedHits.isEmpty()) {
+            mergeRollups(sealedHits);
+        }
+    }
+
+    private void streamTotals(String sql, List<Object> args, Consumer<ViewStats> consumer) {
+        queryTotals(sql, args, (key, total) -> consumer.accept(toViewStats(key.appId(), key.uriId(), total)));
+    }
+
+    private void queryTotals(String sql, List<Object> args, ObjLongConsumer<HitGroupKey> consumer) {
+        jdbcTemplate.query(fetching(sql, args), rs -> {
+            consumer.accept(new HitGroupKey(rs.getInt("app_id"), rs.getInt("uri_id")), rs.getLong("total"));
+        });
+    }
+
+    private PreparedStatementCreator fetching(String sql, List<Object> args) {
+        return connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(fetchSize);
+            new ArgumentPreparedStatementSetter(args.toArray()).setValues(ps);
+            return ps;
+        };
+    }
+
+    private void appendRawTimeSeries(StringBuilder sql, List<Object> args, QuerySegment segment,
+                                     RollupGranularity step, List<Integer> uriIds, String countExpression) {
+        String bucket = "DATE_TRUNC('" + step.name().toLowerCase() + "', created)";
+        sql.append("SELECT ").append(bucket).append(" AS bucket, app_id, uri_id, ").append(countExpression)
+                .append(" AS hits FROM ").append(source(segment)).append(" WHERE ");
+        appendFilter(sql, args, segment, uriIds);
+        sql.append(" GROUP BY ").append(bucket).append(", app_id, uri_id");
+    }
+
+    private List<ViewTimeSeries> toTimeSeries(Map<HitGroupKey, long[]> series, RollupGranularity step,
+                                              LocalDateTime firstBucket) {
+        return series.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<HitGroupKey, long[]> entry) ->
+                        Arrays.stream(entry.getValue()).sum()).reversed())
+                .map(entry -> new ViewTimeSeries(hitDictionary.appName(entry.getKey().appId()),
+                        hitDictionary.uri(entry.getKey().uriId()), firstBucket, step.getStep(),
+                        Arrays.stream(entry.getValue()).boxed().toList()))
+                .toList();
+    }
+
+    ViewStats toViewStats(int appId, int uriId, long hits) {
+        return new ViewStats(hitDictionary.appName(appId), hitDictionary.uri(uriId), hits);
+    }
+
+    private void mergeRollups(List<EncodedHit> hits) {
+        Map<RollupKey, Long> increments = new TreeMap<>();
+        Map<RollupKey, HyperLogLog> sketches = new TreeMap<>();
+        for (EncodedHit hit : hits) {
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                RollupKey key = new RollupKey(granularity, granularity.floor(hit.created()), hit.appId(), hit.uriId());
+                increments.merge(key, 1L, Long::sum);
+            }
+            addToSketches(sketches, hit);
+        }
+        // a MERGE lets two transactions both insert a new bucket row, so missing rows are created
+        // first, skipping conflicts, and then incremented in key order under row locks
+        jdbcTemplate.batchUpdate(INSERT_ROLLUP, increments.keySet(), batchSize, (ps, key) -> {
+            ps.setString(1, key.granularity().name());
+            ps.setObject(2, key.bucket());
+            ps.setInt(3, key.appId());
+            ps.setInt(4, key.uriId());
+        });
+        jdbcTemplate.batchUpdate(INCREMENT_ROLLUP, increments.entrySet(), batchSize, (ps, increment) -> {
+            RollupKey key = increment.getKey();
+            ps.setLong(1, increment.getValue());
+            ps.setString(2, key.granularity().name());
+            ps.setObject(3, key.bucket());
+            ps.setInt(4, key.appId());
+            ps.setInt(5, key.uriId());
+        });
+
+        mergeStoredSketches(sketches);
+        updateSketches(sketches);
+    }
+
+    /**
+     * Merges the stored sketches of the keys into the given ones, reading up to a batch of keys per query.
+     */
+    private void mergeStoredSketches(Map<RollupKey, HyperLogLog> sketches) {
+        List<RollupKey> keys = List.copyOf(sketches.keySet());
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            List<RollupKey> chunk = keys.subList(from, Math.min(from + batchSize, keys.size()));
+            List<Object> args = new ArrayList<>(chunk.size() * 4);
+            chunk.forEach(key -> Collections.addAll(args, key.granularity().name(), key.bucket(), key.appId(),
+                    key.uriId()));
+            jdbcTemplate.query(SELECT_SKETCHES.formatted(String.join(", ", Collections.nCopies(chunk.size(),
+                    "(?, ?, ?, ?)"))), rs -> {
+                RollupKey key = new RollupKey(RollupGranularity.valueOf(rs.getString("granularity")),
+                        rs.getObject("bucket", LocalDateTime.class), rs.getInt("app_id"), rs.getInt("uri_id"));
+                sketches.get(key).merge(HyperLogLog.fromBytes(rs.getBytes("ip_sketch")));
+            }, args.toArray());
+        }
+    }
+
+    private void addToSketches(Map<RollupKey, HyperLogLog> sketches, EncodedHit hit) {
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            RollupKey key = new RollupKey(granularity, granularity.floor(hit.created()), hit.appId(), hit.uriId());
+            sketches.computeIfAbsent(key, k -> new HyperLogLog()).add(hit.ip());
+        }
+    }
+
+    private void updateSketches(Map<RollupKey, HyperLogLog> sketches) {
+        jdbcTemplate.batchUpdate(UPDATE_SKETCH, sketches.entrySet(), batchSize, (ps, entry) -> {
+            RollupKey key = entry.getKey();
+            ps.setBytes(1, entry.getValue().toBytes());
+            ps.setString(2, key.granularity().name());
+            ps.setObject(3, key.bucket());
+            ps.setInt(4, key.appId());
+            ps.setInt(5, key.uriId());
+        });
+    }
+
+    /**
+     * Runs a query that combines the live tables with the sealed files, see {@link HitSegmentStore#read},
+     * and that no partition is dropped under, see {@link HitPartitions#read}.
+     */
+    public <T> T read(Supplier<T> query) {
+        return hitPartitions.read(() -> hitSegmentStore.isPresent() ? hitSegmentStore.get().read(query) : query.get());
+    }
+
+    boolean hasSealedHits(QuerySegment segment) {
+        return hitSegmentStore.map(store -> store.overlaps(segment.from(), segment.to())).orElse(false);
+    }
+
+    private void forEachSealedHit(List<QuerySegment> segments, List<Integer> uriIds, Consumer<EncodedHit> consumer) {
+        hitSegmentStore.ifPresent(store -> segments.stream().filter(QuerySegment::isRaw).forEach(segment ->
+                store.scan(segment.from(), segment.to(), segment.toInclusive(), uriIds, consumer)));
+    }
+
+    /**
+     * Visits the distinct (app, uri, bucket, ip) values of a raw range from both the live tables
+     * and the sealed files; with a null step every hit falls into a single null bucket.
+     */
+    void forEachDistinctIp(QuerySegment segment, List<Integer> uriIds, RollupGranularity step,
+                                   DistinctIpConsumer consumer) {
+        List<Object> args = new ArrayList<>();
+        String bucket = step == null ? "CAST(NULL AS TIMESTAMP)"
+                : "DATE_TRUNC('" + step.name().toLowerCase() + "', created)";
+        StringBuilder sql = new StringBuilder("SELECT DISTINCT ").append(bucket)
+                .append(" AS bucket, app_id, uri_id, ip FROM ").append(source(segment)).append(" WHERE ");
+        appendFilter(sql, args, segment, uriIds);
+        jdbcTemplate.query(sql.toString(), rs -> {
+            consumer.accept(new HitGroupKey(rs.getInt("app_id"), rs.getInt("uri_id")),
+                    rs.getObject("bucket", LocalDateTime.class), ByteBuffer.wrap(rs.getBytes("ip")));
+        }, args.toArray());
+        forEachSealedHit(List.of(segment), uriIds, hit -> consumer.accept(new HitGroupKey(hit.appId(), hit.uriId()),
+                step == null ? null : step.floor(hit.created()), ByteBuffer.wrap(hit.ip())));
+    }
+
+    private String source(QuerySegment segment) {
+        return hitPartitions.source(segment.from(), segment.to());
+    }
+
+    interface DistinctIpConsumer {
+        void accept(HitGroupKey key, LocalDateTime bucket, ByteBuffer ip);
+    }
+
+    /**
+     * Splits the ranges into runs of whole ranges with at most {@link #MAX_UNION_SEGMENTS} segments
+     * together, or a single larger range, and passes each run as [from, to) range indexes.
+     */
+    private static void forEachUnion(List<List<QuerySegment>> ranges, BiConsumer<Integer, Integer> union) {
+        int from = 0;
+        while (from < ranges.size()) {
+            int to = from;
+            int segments = 0;
+            while (to < ranges.size() && (to == from || segments + ranges.get(to).size() <= MAX_UNION_SEGMENTS)) {
+                segments += ranges.get(to).size();
+                to++;
+            }
+            if (segments > 0) {
+                union.accept(from, to);
+            }
+            from = to;
+        }
+    }
+
+    private void appendFilter(StringBuilder sql, List<Object> args, QuerySegment segment, List<Integer> uriIds) {
+        if (segment.isRaw()) {
+            sql.append("created >= ? AND created ").append(segment.toInclusive() ? "<= ?" : "< ?");
+        } else {
+            sql.append("granularity = ? AND bucket >= ? AND bucket < ?");
+            args.add(segment.granularity().name());
+        }
+        args.add(segment.from());
+        args.add(segment.to());
+        if (uriIds != null) {
+            // one array parameter per segment, a list of placeholders would be repeated in every
+            // segment of the union and overflow the bind parameter limit for a few thousand uris
+            sql.append(" AND uri_id = ANY(?)");
+            args.add(uriIds.toArray(Integer[]::new));
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package ru.practicum.stats.service;
+
+import ru.practicum.stats.dto.EndpointHitCreate;
+
+import java.util.List;
+
+public interface HitListener {
+    void onHits(List<EndpointHitCreate> hits);
+}
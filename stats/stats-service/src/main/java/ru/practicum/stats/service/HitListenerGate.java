@@ -0,0 +1,47 @@
+package ru.practicum.stats.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Lines up hit writes with the rollup reads the in-memory {@link HitListener}s warm up from. A
+ * write holds the gate from before its hits are stored until the listeners have been called, and a
+ * warm-up holds it exclusively until its rollup query has started. Every hit is then either in the
+ * rows of that query or reaches the listeners after the query started, never both or neither.
+ */
+@Component
+public class HitListenerGate {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void write(Runnable storeAndNotify) {
+        lock.readLock().lock();
+        try {
+            storeAndNotify.run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs the read with no write in flight and lets writes through again once the read calls the
+     * given runnable, which it has to do as soon as its query returns the first row.
+     */
+    public void read(Consumer<Runnable> read) {
+        AtomicBoolean locked = new AtomicBoolean(true);
+        Runnable started = () -> {
+            if (locked.compareAndSet(true, false)) {
+                lock.writeLock().unlock();
+            }
+        };
+        lock.writeLock().lock();
+        try {
+            read.accept(started);
+        } finally {
+            started.run();
+        }
+    }
+}
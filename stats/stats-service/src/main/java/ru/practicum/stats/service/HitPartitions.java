@@ -0,0 +1,177 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Registry of the daily hit tables. Raw hits are written to {@code hits_yyyyMMdd} tables created
+ * on demand; the original {@code hits} table stays readable as the partition for rows written
+ * before partitioning and is always part of a query. A partition is dropped under a write lock,
+ * so that a query or an insert running under {@link #read} never names a table that is gone.
+ */
+@Component
+@DependsOn("legacyHitsMigration")
+@Slf4j
+public class HitPartitions {
+    private static final String LEGACY_TABLE = "hits";
+    private static final String COLUMNS = "app_id, uri_id, ip, created";
+    private static final DateTimeFormatter TABLE_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS %1$s (
+                id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+                app_id INTEGER NOT NULL,
+                uri_id INTEGER NOT NULL,
+                ip BYTEA NOT NULL,
+                created TIMESTAMP NOT NULL,
+                CONSTRAINT fk_%1$s_app FOREIGN KEY (app_id) REFERENCES hit_apps (id),
+                CONSTRAINT fk_%1$s_uri FOREIGN KEY (uri_id) REFERENCES hit_uris (id)
+            )
+            """;
+    static final String CREATE_INDEX = "CREATE INDEX IF NOT EXISTS idx_%1$s_created ON %1$s (created)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final NavigableMap<LocalDate, String> tables = new ConcurrentSkipListMap<>();
+    private final ReadWriteLock dropLock = new ReentrantReadWriteLock();
+    private final long dropLockTimeoutMs;
+    private final int retentionRawDays;
+
+    public HitPartitions(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         @Value("${stat.stream.timeout-ms:30000}") long dropLockTimeoutMs,
+                         @Value("${stat.retention.raw-days:0}") int retentionRawDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dropLockTimeoutMs = dropLockTimeoutMs;
+        this.retentionRawDays = retentionRawDays;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void load() {
+        jdbcTemplate.query("SELECT partition_day, table_name FROM hit_partitions", rs -> {
+            tables.put(rs.getObject("partition_day", LocalDate.class), rs.getString("table_name"));
+        });
+        log.info("STAT PARTITIONS: loaded {} daily partitions", tables.size());
+    }
+
+    public String existingTable(LocalDate day) {
+        return tables.get(day);
+    }
+
+    /**
+     * The table for raw hits of the day, created on demand, or null for a day before the raw
+     * retention cutoff, whose partition would only be dropped again.
+     */
+    public String tableFor(LocalDate day) {
+        String table = tables.get(day);
+        if (table != null) {
+            return table;
+        }
+        if (retentionRawDays > 0 && day.isBefore(LocalDate.now().minusDays(retentionRawDays))) {
+            return null;
+        }
+        return create(day);
+    }
+
+    /**
+     * A relation named {@code hits} with the columns app_id, uri_id, ip and created that covers
+     * every partition overlapping [from, to]; null bounds mean unbounded.
+     */
+    public String source(LocalDateTime from, LocalDateTime to) {
+        NavigableMap<LocalDate, String> range = tables;
+        if (from != null) {
+            range = range.tailMap(from.toLocalDate(), true);
+        }
+        if (to != null) {
+            range = range.headMap(to.toLocalDate(), true);
+        }
+        if (range.isEmpty()) {
+            return LEGACY_TABLE;
+        }
+        return Stream.concat(Stream.of(LEGACY_TABLE), range.values().stream())
+                .map(table -> "SELECT " + COLUMNS + " FROM " + table)
+                .collect(Collectors.joining(" UNION ALL ", "(", ") hits"));
+    }
+
+    public String source() {
+        return source(null, null);
+    }
+
+    public <T> T read(Supplier<T> query) {
+        dropLock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            dropLock.readLock().unlock();
+        }
+    }
+
+    public List<LocalDate> days() {
+        return List.copyOf(tables.keySet());
+    }
+
+    public List<LocalDate> daysBefore(LocalDate day) {
+        return List.copyOf(tables.headMap(day, false).keySet());
+    }
+
+    /**
+     * Drops the partition of the day, or leaves it for the next run when reads keep the lock for
+     * longer than {@code stat.stream.timeout-ms}.
+     */
+    public void drop(LocalDate day) {
+        String table;
+        if (!LockWaits.tryLock(dropLock.writeLock(), dropLockTimeoutMs)) {
+            log.warn("STAT PARTITIONS: reads kept partition {} busy, dropping it on the next run", day);
+            return;
+        }
+        try {
+            table = tables.remove(day);
+            if (table == null) {
+                return;
+            }
+            newTransaction.executeWithoutResult(status -> {
+                jdbcTemplate.update("DELETE FROM hit_partitions WHERE partition_day = ?", day);
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+            });
+        } finally {
+            dropLock.writeLock().unlock();
+        }
+        log.info("STAT PARTITIONS: dropped partition {}", table);
+    }
+
+    private synchronized String create(LocalDate day) {
+        String existing = tables.get(day);
+        if (existing != null) {
+            return existing;
+        }
+        String table = LEGACY_TABLE + "_" + day.format(TABLE_SUFFIX);
+        newTransaction.executeWithoutResult(status -> {
+            jdbcTemplate.execute(CREATE_TABLE.formatted(table));
+            jdbcTemplate.execute(CREATE_INDEX.formatted(table));
+            jdbcTemplate.update("INSERT INTO hit_partitions (partition_day, table_name) VALUES (?, ?) "
+                    + "ON CONFLICT DO NOTHING", day, table);
+        });
+        tables.put(day, table);
+        log.info("STAT PARTITIONS: created partition {}", table);
+        return table;
+    }
+}
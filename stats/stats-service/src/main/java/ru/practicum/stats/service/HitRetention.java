@@ -0,0 +1,69 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.service.segment.HitSegmentStore;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Drops raw hits older than {@code stat.retention.raw-days}, sealed segment files included. Off by
+ * default (0), and refused unless {@code stat.unique.mode} is APPROXIMATE, since the exact and bitmap
+ * unique counts are read from the raw hits. Rollups are maintained on ingest, so older ranges stay
+ * answerable from the hourly and daily rollups; minute rollups go together with the raw partitions,
+ * and the edges of a range before {@link #rawFrom()} are answered from whole hours instead.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HitRetention {
+    private final HitJdbcRepository hitJdbcRepository;
+    private final HitPartitions hitPartitions;
+    private final Optional<HitSegmentStore> hitSegmentStore;
+    @Value("${stat.retention.raw-days:0}")
+    private int rawDays;
+    @Value("${stat.unique.mode:EXACT}")
+    private UniqueMode uniqueMode;
+
+    @PostConstruct
+    public void validate() {
+        if (rawDays > 0 && uniqueMode != UniqueMode.APPROXIMATE) {
+            throw new IllegalStateException("stat.retention.raw-days=" + rawDays + " needs stat.unique.mode="
+                    + UniqueMode.APPROXIMATE + ", " + uniqueMode + " unique counts are read from the raw hits");
+        }
+    }
+
+    /**
+     * Start of the raw hits and minute rollups that retention keeps, or null when it keeps everything.
+     */
+    public LocalDateTime rawFrom() {
+        return rawDays > 0 ? LocalDate.now().minusDays(rawDays).atStartOfDay() : null;
+    }
+
+    @Scheduled(initialDelayString = "${stat.retention.interval-ms:3600000}",
+            fixedDelayString = "${stat.retention.interval-ms:3600000}")
+    public void applyRetention() throws IOException {
+        if (rawDays <= 0) {
+            return;
+        }
+        LocalDate cutoffDay = LocalDate.now().minusDays(rawDays);
+        LocalDateTime cutoff = cutoffDay.atStartOfDay();
+        for (LocalDate day : hitPartitions.daysBefore(cutoffDay)) {
+            hitPartitions.drop(day);
+        }
+        if (hitSegmentStore.isPresent()) {
+            hitSegmentStore.get().deleteBefore(cutoffDay);
+        }
+        int legacyHits = hitJdbcRepository.deleteLegacyHitsBefore(cutoff);
+        int minuteRollups = hitJdbcRepository.deleteRollupsBefore(RollupGranularity.MINUTE, cutoff);
+        log.info("STAT RETENTION: removed raw hits before {} ({} legacy rows, {} minute rollups)",
+                cutoffDay, legacyHits, minuteRollups);
+    }
+}
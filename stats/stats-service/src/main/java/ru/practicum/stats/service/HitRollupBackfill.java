@@ -0,0 +1,36 @@
+package ru.practicum.stats.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Rebuilds empty rollup tables from raw hits, e.g. after {@link LegacyHitsMigration}. Runs once all
+ * beans are created and before the web server starts, so no query is answered, and cached, from
+ * half-built rollups.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HitRollupBackfill implements SmartInitializingSingleton {
+    private final HitJdbcRepository hitJdbcRepository;
+    private final HitIpBitmapRepository hitIpBitmapRepository;
+    @Value("${stat.unique.mode:EXACT}")
+    private UniqueMode uniqueMode;
+
+    @Override
+    @Transactional
+    public void afterSingletonsInstantiated() {
+        if (hitJdbcRepository.isRollupBackfillNeeded()) {
+            log.info("STAT ROLLUPS: rollup tables are empty, rebuilding them from raw hits");
+            hitJdbcRepository.rebuildRollups();
+        }
+        if (uniqueMode == UniqueMode.BITMAP && hitIpBitmapRepository.isBackfillNeeded()) {
+            log.info("STAT ROLLUPS: ip bitmaps are empty, rebuilding them from raw hits");
+            hitIpBitmapRepository.rebuild();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ru.practicum.stats.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Stored form of client ips: 4 or 16 address bytes for IPv4 and IPv6 addresses. Any other value is
+ * kept as tagged text, a zero byte and a padding flag followed by its UTF-8 bytes, padded with one
+ * more zero byte when it would otherwise be 4 or 16 bytes long, so it never reads as an address.
+ */
+public final class IpAddresses {
+    private static final byte TEXT_TAG = 0;
+    private static final int TEXT_HEADER = 2;
+
+    private IpAddresses() {
+    }
+
+    public static byte[] toBytes(String ip) {
+        byte[] address = parse(ip);
+        return address != null ? address : textBytes(ip);
+    }
+
+    public static String toString(byte[] address) {
+        if (address.length != 4 && address.length != 16) {
+            int padding = address[1];
+            return new String(address, TEXT_HEADER, address.length - TEXT_HEADER - padding, StandardCharsets.UTF_8);
+        }
+        try {
+            return InetAddress.getByAddress(address).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Invalid stored ip address of length " + address.length, e);
+        }
+    }
+
+    private static byte[] parse(String ip) {
+        if (ip.indexOf(':') < 0) {
+            return parseIpv4(ip);
+        }
+        if (!ip.chars().allMatch(c -> Character.digit(c, 16) >= 0 || c == ':' || c == '.')) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static byte[] textBytes(String ip) {
+        byte[] text = ip.getBytes(StandardCharsets.UTF_8);
+        int length = TEXT_HEADER + text.length;
+        int padding = length == 4 || length == 16 ? 1 : 0;
+        byte[] bytes = Arrays.copyOf(new byte[]{TEXT_TAG, (byte) padding}, length + padding);
+        System.arraycopy(text, 0, bytes, TEXT_HEADER, text.length);
+        return bytes;
+    }
+
+    private static byte[] parseIpv4(String ip) {
+        String[] parts = ip.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        byte[] address = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            String part = parts[i];
+            if (part.isEmpty() || part.length() > 3 || !part.chars().allMatch(Character::isDigit)) {
+                return null;
+            }
+            int octet = Integer.parseInt(part);
+            if (octet > 255) {
+                return null;
+            }
+            address[i] = (byte) octet;
+        }
+        return address;
+    }
+}
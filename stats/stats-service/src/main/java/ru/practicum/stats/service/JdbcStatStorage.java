@@ -0,0 +1,236 @@
+package ru.practicum.stats.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewTimeSeries;
+import ru.practicum.stats.service.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+@Component
+@ConditionalOnProperty(name = "stat.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JdbcStatStorage implements StatStorage {
+    private final HitJdbcRepository hitJdbcRepository;
+    private final HitDictionary hitDictionary;
+    private final HitIpBitmapRepository hitIpBitmapRepository;
+    private final HitRetention hitRetention;
+    @Value("${stat.unique.mode:EXACT}")
+    private UniqueMode uniqueMode;
+
+    @Override
+    @Transactional
+    public void saveAll(List<EndpointHitCreate> hits) {
+        List<EncodedHit> encoded = hitJdbcRepository.saveAll(hits);
+        if (uniqueMode == UniqueMode.BITMAP) {
+            hitIpBitmapRepository.merge(encoded);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        List<ViewStats> stats = new ArrayList<>();
+        streamStats(start, end, uris, unique, stats::add);
+        return stats;
+    }
+
+    /**
+     * Passes the rows on as the storage reads them. Counts and exact unique counts of days that are
+     * not sealed yet come from a database cursor; unique counts in the approximate and bitmap modes,
+     * and any query that reads sealed segment files, are collected in memory first.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                            Consumer<ViewStats> consumer) {
+        hitJdbcRepository.read(() -> {
+            List<Integer> uriIds = null;
+            if (uris != null && !uris.isEmpty()) {
+                uriIds = hitDictionary.findUriIds(uris);
+                if (uriIds.isEmpty()) {
+                    return null;
+                }
+            }
+            if (unique && uniqueMode == UniqueMode.EXACT) {
+                hitJdbcRepository.streamExactUniqueHits(start, end, uriIds, consumer);
+                return null;
+            }
+            if (unique && uniqueMode == UniqueMode.BITMAP) {
+                hitIpBitmapRepository.streamUniqueHits(start, end, uriIds, consumer);
+                return null;
+            }
+            List<QuerySegment> segments = plan(start, end);
+            if (unique) {
+                hitJdbcRepository.findApproximateUniqueHits(segments, uriIds).forEach(consumer);
+                return null;
+            }
+            hitJdbcRepository.streamHits(segments, uriIds, consumer);
+            return null;
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<ViewKey, HyperLogLog> getUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return hitJdbcRepository.read(() -> {
+            if (uniqueMode != UniqueMode.APPROXIMATE) {
+                return null;
+            }
+            List<Integer> uriIds = null;
+            if (uris != null && !uris.isEmpty()) {
+                uriIds = hitDictionary.findUriIds(uris);
+                if (uriIds.isEmpty()) {
+                    return Map.of();
+                }
+            }
+            Map<ViewKey, HyperLogLog> sketches = new HashMap<>();
+            hitJdbcRepository.findUniqueSketches(plan(start, end), uriIds).forEach((key, sketch) ->
+                    sketches.put(new ViewKey(hitDictionary.appName(key.appId()), hitDictionary.uri(key.uriId())), sketch));
+            return sketches;
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<List<ViewStats>> getStats(List<StatQuery> ranges) {
+        return hitJdbcRepository.read(() -> {
+            List<List<ViewStats>> stats = new ArrayList<>(Collections.nCopies(ranges.size(), List.of()));
+            RangeBatch counts = new RangeBatch();
+            RangeBatch exactUniqueCounts = new RangeBatch();
+            RangeBatch sketches = new RangeBatch();
+            for (int i = 0; i < ranges.size(); i++) {
+                StatQuery range = ranges.get(i);
+                List<Integer> uriIds = findUriIds(range.uris());
+                if (uriIds != null && uriIds.isEmpty()) {
+                    continue;
+                }
+                QuerySegment raw = QuerySegment.raw(range.start(), range.end(), true);
+                if (!range.unique()) {
+                    counts.add(i, plan(range.start(), range.end()), uriIds);
+                } else if (uniqueMode == UniqueMode.APPROXIMATE) {
+                    sketches.add(i, plan(range.start(), range.end()), uriIds);
+                } else if (uniqueMode == UniqueMode.EXACT && !hitJdbcRepository.hasSealedHits(raw)) {
+                    exactUniqueCounts.add(i, List.of(raw), uriIds);
+                } else {
+                    stats.set(i, getStats(range.start(), range.end(), range.uris(), true));
+                }
+            }
+            counts.forEachResult(hitJdbcRepository.findRangeTotals(counts.segments(), counts.uriIds(), false),
+                    (i, totals) -> stats.set(i, toStats(totals)));
+            exactUniqueCounts.forEachResult(hitJdbcRepository.findRangeTotals(exactUniqueCounts.segments(),
+                    exactUniqueCounts.uriIds(), true), (i, totals) -> stats.set(i, toStats(totals)));
+            sketches.forEachResult(hitJdbcRepository.findRangeSketches(sketches.segments(), sketches.uriIds()),
+                    (i, rangeSketches) -> {
+                        Map<HitGroupKey, Long> totals = new HashMap<>();
+                        rangeSketches.forEach((key, sketch) -> totals.put(key, sketch.estimate()));
+                        stats.set(i, toStats(totals));
+                    });
+            return stats;
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Map<ViewKey, HyperLogLog>> getUniqueSketches(List<StatQuery> ranges) {
+        return hitJdbcRepository.read(() -> {
+            if (uniqueMode != UniqueMode.APPROXIMATE) {
+                return null;
+            }
+            List<Map<ViewKey, HyperLogLog>> sketches = new ArrayList<>(Collections.nCopies(ranges.size(), Map.of()));
+            RangeBatch batch = new RangeBatch();
+            for (int i = 0; i < ranges.size(); i++) {
+                StatQuery range = ranges.get(i);
+                List<Integer> uriIds = findUriIds(range.uris());
+                if (uriIds == null || !uriIds.isEmpty()) {
+                    batch.add(i, plan(range.start(), range.end()), uriIds);
+                }
+            }
+            batch.forEachResult(hitJdbcRepository.findRangeSketches(batch.segments(), batch.uriIds()),
+                    (i, rangeSketches) -> {
+                        Map<ViewKey, HyperLogLog> named = new HashMap<>();
+                        rangeSketches.forEach((key, sketch) -> named.put(new ViewKey(
+                                hitDictionary.appName(key.appId()), hitDictionary.uri(key.uriId())), sketch));
+                        sketches.set(i, named);
+                    });
+            return sketches;
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ViewTimeSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                              RollupGranularity step, boolean unique) {
+        return hitJdbcRepository.read(() -> {
+            List<Integer> uriIds = null;
+            if (uris != null && !uris.isEmpty()) {
+                uriIds = hitDictionary.findUriIds(uris);
+                if (uriIds.isEmpty()) {
+                    return List.of();
+                }
+            }
+            LocalDateTime firstBucket = step.floor(start);
+            int bucketCount = (int) step.getUnit().between(firstBucket, step.floor(end)) + 1;
+            if (unique && uniqueMode != UniqueMode.APPROXIMATE) {
+                return hitJdbcRepository.findExactUniqueTimeSeries(start, end, step, firstBucket, bucketCount, uriIds);
+            }
+            List<QuerySegment> segments = RollupPlanner.plan(start, end, step, hitRetention.rawFrom());
+            if (unique) {
+                return hitJdbcRepository.findApproximateUniqueTimeSeries(segments, step, firstBucket, bucketCount, uriIds);
+            }
+            return hitJdbcRepository.findTimeSeries(segments, step, firstBucket, bucketCount, uriIds);
+        });
+    }
+
+    private List<QuerySegment> plan(LocalDateTime start, LocalDateTime end) {
+        return RollupPlanner.plan(start, end, RollupGranularity.DAY, hitRetention.rawFrom());
+    }
+
+    /**
+     * Ids of the uris, or null when the query has no uri filter.
+     */
+    private List<Integer> findUriIds(List<String> uris) {
+        return uris == null || uris.isEmpty() ? null : hitDictionary.findUriIds(uris);
+    }
+
+    private List<ViewStats> toStats(Map<HitGroupKey, Long> totals) {
+        return totals.entrySet().stream()
+                .sorted(Map.Entry.<HitGroupKey, Long>comparingByValue().reversed())
+                .map(entry -> hitJdbcRepository.toViewStats(entry.getKey().appId(), entry.getKey().uriId(),
+                        entry.getValue()))
+                .toList();
+    }
+
+    /**
+     * Ranges read together, with the indexes of the ranges they answer.
+     */
+    private record RangeBatch(List<Integer> indexes, List<List<QuerySegment>> segments, List<List<Integer>> uriIds) {
+        RangeBatch() {
+            this(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        }
+
+        void add(int index, List<QuerySegment> rangeSegments, List<Integer> rangeUriIds) {
+            indexes.add(index);
+            segments.add(rangeSegments);
+            uriIds.add(rangeUriIds);
+        }
+
+        <T> void forEachResult(List<T> results, BiConsumer<Integer, T> consumer) {
+            for (int i = 0; i < results.size(); i++) {
+                consumer.accept(indexes.get(i), results.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves hits stored in the original layout, with app, uri and ip as strings in the {@code hits}
+ * table, to the dictionary-encoded layout. The old table is renamed, the current {@code hits}
+ * table is created in its place and the rows are copied over in id order; ips that are not
+ * addresses are kept in the text form of {@link IpAddresses}. Runs once at startup, before the dictionary and the partitions are
+ * loaded; rollups are rebuilt from the copied hits by {@link HitRollupBackfill}.
+ */
+@Component
+@Slf4j
+public class LegacyHitsMigration {
+    private static final String LEGACY_TABLE = "hits_legacy";
+    private static final String SELECT_LEGACY_HITS = "SELECT id, app, uri, ip, created FROM " + LEGACY_TABLE
+            + " WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, created) VALUES (?, ?, ?, ?)";
+    private static final int BATCH_SIZE = 10000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public LegacyHitsMigration(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!hasLegacyLayout()) {
+            return;
+        }
+        log.info("STAT MIGRATION: hits table has the string layout, moving it to the dictionary-encoded layout");
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("ALTER TABLE hits RENAME TO " + LEGACY_TABLE);
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_hits_created");
+            jdbcTemplate.execute(HitPartitions.CREATE_TABLE.formatted("hits"));
+            jdbcTemplate.execute(HitPartitions.CREATE_INDEX.formatted("hits"));
+
+            List<String> apps = jdbcTemplate.queryForList("SELECT DISTINCT app FROM " + LEGACY_TABLE, String.class);
+            jdbcTemplate.batchUpdate("INSERT INTO hit_apps (name) VALUES (?) ON CONFLICT DO NOTHING", apps, BATCH_SIZE,
+                    (ps, app) -> ps.setString(1, app));
+            List<String> uris = jdbcTemplate.queryForList("SELECT DISTINCT uri FROM " + LEGACY_TABLE, String.class);
+            jdbcTemplate.batchUpdate("INSERT INTO hit_uris (uri, resource_id) VALUES (?, ?) ON CONFLICT DO NOTHING",
+                    uris, BATCH_SIZE, (ps, uri) -> {
+                        ps.setString(1, uri);
+                        ps.setObject(2, HitDictionary.parseResourceId(uri));
+                    });
+            Map<String, Integer> appIds = ids("SELECT id, name FROM hit_apps");
+            Map<String, Integer> uriIds = ids("SELECT id, uri AS name FROM hit_uris");
+
+            long copied = 0;
+            long lastId = 0;
+            while (true) {
+                List<LegacyHit> page = jdbcTemplate.query(SELECT_LEGACY_HITS, (rs, rowNum) -> new LegacyHit(
+                        rs.getLong("id"), rs.getString("app"), rs.getString("uri"), rs.getString("ip"),
+                        rs.getTimestamp("created")), lastId, BATCH_SIZE);
+                if (page.isEmpty()) {
+                    break;
+                }
+                lastId = page.getLast().id();
+                List<Object[]> rows = new ArrayList<>(page.size());
+                for (LegacyHit hit : page) {
+                    rows.add(new Object[]{appIds.get(hit.app()), uriIds.get(hit.uri()),
+                            IpAddresses.toBytes(hit.ip()), hit.created()});
+                }
+                jdbcTemplate.batchUpdate(INSERT_HIT, rows);
+                copied += rows.size();
+            }
+            jdbcTemplate.execute("DROP TABLE " + LEGACY_TABLE);
+            log.info("STAT MIGRATION: moved {} legacy hits", copied);
+        });
+    }
+
+    private boolean hasLegacyLayout() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (ResultSet columns = connection.getMetaData().getColumns(connection.getCatalog(),
+                    connection.getSchema(), "hits", "app")) {
+                return columns.next();
+            }
+        }));
+    }
+
+    private Map<String, Integer> ids(String sql) {
+        Map<String, Integer> ids = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            ids.put(rs.getString("name"), rs.getInt("id"));
+        });
+        return ids;
+    }
+
+    private record LegacyHit(long id, String app, String uri, String ip, Timestamp created) {
+    }
+}
@@ -0,0 +1,35 @@
+package ru.practicum.stats.service;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Waits for a write lock that streamed reads may hold for up to {@code stat.stream.timeout-ms}. A
+ * writer queued on a {@link java.util.concurrent.locks.ReentrantReadWriteLock} makes every new
+ * reader wait behind it, so the lock is polled with {@link Lock#tryLock()}, which takes it only
+ * when it is free and never queues.
+ */
+public final class LockWaits {
+    private static final long POLL_INTERVAL_MS = 20;
+
+    private LockWaits() {
+    }
+
+    /**
+     * Takes the lock, or returns false when it stays held for longer than the timeout.
+     */
+    public static boolean tryLock(Lock lock, long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!lock.tryLock()) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+}
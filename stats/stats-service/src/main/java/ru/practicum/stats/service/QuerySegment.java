@@ -0,0 +1,17 @@
+package ru.practicum.stats.service;
+
+import java.time.LocalDateTime;
+
+public record QuerySegment(RollupGranularity granularity,
+                           LocalDateTime from,
+                           LocalDateTime to,
+                           boolean toInclusive) {
+
+    public static QuerySegment raw(LocalDateTime from, LocalDateTime to, boolean toInclusive) {
+        return new QuerySegment(null, from, to, toInclusive);
+    }
+
+    public boolean isRaw() {
+        return granularity == null;
+    }
+}
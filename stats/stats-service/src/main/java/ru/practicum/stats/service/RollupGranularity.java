@@ -0,0 +1,46 @@
+package ru.practicum.stats.service;
+
+import ru.practicum.stats.service.exception.StatValidationException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+public enum RollupGranularity {
+    MINUTE(ChronoUnit.MINUTES, "1m"),
+    HOUR(ChronoUnit.HOURS, "1h"),
+    DAY(ChronoUnit.DAYS, "1d");
+
+    private final ChronoUnit unit;
+    private final String step;
+
+    RollupGranularity(ChronoUnit unit, String step) {
+        this.unit = unit;
+        this.step = step;
+    }
+
+    public static RollupGranularity fromStep(String step) {
+        for (RollupGranularity granularity : values()) {
+            if (granularity.step.equals(step)) {
+                return granularity;
+            }
+        }
+        throw new StatValidationException("Unsupported step: " + step + ", expected one of 1m, 1h, 1d");
+    }
+
+    public ChronoUnit getUnit() {
+        return unit;
+    }
+
+    public String getStep() {
+        return step;
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? floor : floor.plus(1, unit);
+    }
+}
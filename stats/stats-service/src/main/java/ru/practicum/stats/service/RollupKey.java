@@ -0,0 +1,20 @@
+package ru.practicum.stats.service;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+public record RollupKey(RollupGranularity granularity,
+                        LocalDateTime bucket,
+                        int appId,
+                        int uriId) implements Comparable<RollupKey> {
+    private static final Comparator<RollupKey> ORDER = Comparator
+            .comparing(RollupKey::granularity)
+            .thenComparing(RollupKey::bucket)
+            .thenComparingInt(RollupKey::appId)
+            .thenComparingInt(RollupKey::uriId);
+
+    @Override
+    public int compareTo(RollupKey other) {
+        return ORDER.compare(this, other);
+    }
+}
@@ -0,0 +1,83 @@
+package ru.practicum.stats.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits an inclusive [start, end] range into whole rollup buckets, coarsest first,
+ * and raw segments for the edges that no bucket covers completely.
+ */
+public final class RollupPlanner {
+    private static final RollupGranularity[] COARSEST_FIRST = {
+            RollupGranularity.DAY, RollupGranularity.HOUR, RollupGranularity.MINUTE
+    };
+
+    private RollupPlanner() {
+    }
+
+    public static List<QuerySegment> plan(LocalDateTime start, LocalDateTime end) {
+        return plan(start, end, RollupGranularity.DAY);
+    }
+
+    /**
+     * Same as {@link #plan(LocalDateTime, LocalDateTime)}, but never uses buckets coarser than
+     * {@code coarsest}, so that every segment falls into whole buckets of that granularity.
+     */
+    public static List<QuerySegment> plan(LocalDateTime start, LocalDateTime end, RollupGranularity coarsest) {
+        List<QuerySegment> segments = new ArrayList<>();
+        cover(start, end, List.of(COARSEST_FIRST).indexOf(coarsest), segments);
+
+        QuerySegment last = segments.isEmpty() ? null : segments.getLast();
+        if (last != null && last.isRaw() && last.to().equals(end)) {
+            segments.set(segments.size() - 1, QuerySegment.raw(last.from(), end, true));
+        } else {
+            segments.add(QuerySegment.raw(end, end, true));
+        }
+        return segments;
+    }
+
+    /**
+     * Same as {@link #plan(LocalDateTime, LocalDateTime, RollupGranularity)} for a store that keeps raw
+     * hits and minute rollups only from {@code rawFrom} on. Before it a hit counts as if it happened at
+     * the start of its hour, so the part of the range before {@code rawFrom} is answered from the hour
+     * buckets that start in it instead of from data that is gone. This stays additive, a range split in
+     * two still counts every hour once. A null {@code rawFrom} means that nothing was dropped.
+     */
+    public static List<QuerySegment> plan(LocalDateTime start, LocalDateTime end, RollupGranularity coarsest,
+                                          LocalDateTime rawFrom) {
+        if (rawFrom == null || !start.isBefore(rawFrom) || coarsest == RollupGranularity.MINUTE) {
+            return plan(start, end, coarsest);
+        }
+        List<QuerySegment> segments = new ArrayList<>();
+        LocalDateTime retiredTo = end.isBefore(rawFrom) ? RollupGranularity.HOUR.floor(end).plusHours(1) : rawFrom;
+        cover(RollupGranularity.HOUR.ceil(start), retiredTo, List.of(COARSEST_FIRST).indexOf(coarsest), segments);
+        if (!end.isBefore(rawFrom)) {
+            segments.addAll(plan(rawFrom, end, coarsest));
+        } else if (segments.isEmpty()) {
+            // no hour starts in the range, an empty raw segment keeps the plan non-empty
+            segments.add(QuerySegment.raw(end, end, false));
+        }
+        return segments;
+    }
+
+    private static void cover(LocalDateTime from, LocalDateTime to, int level, List<QuerySegment> segments) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        if (level == COARSEST_FIRST.length) {
+            segments.add(QuerySegment.raw(from, to, false));
+            return;
+        }
+        RollupGranularity granularity = COARSEST_FIRST[level];
+        LocalDateTime first = granularity.ceil(from);
+        LocalDateTime last = granularity.floor(to);
+        if (first.isBefore(last)) {
+            cover(from, first, level + 1, segments);
+            segments.add(new QuerySegment(granularity, first, last, false));
+            cover(last, to, level + 1, segments);
+        } else {
+            cover(from, to, level + 1, segments);
+        }
+    }
+}
@@ -2,8 +2,10 @@ package ru.practicum.stats.service;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class StatApp {
     public static void main(String[] args) {
         SpringApplication.run(StatApp.class, args);
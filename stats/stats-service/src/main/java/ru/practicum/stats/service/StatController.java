@@ -1,11 +1,15 @@
 package ru.practicum.stats.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -14,10 +18,19 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.stats.codec.StatBinaryCodec;
 import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.StatQueryRequest;
+import ru.practicum.stats.dto.StatWindowQuery;
 import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewTimeSeries;
+import ru.practicum.stats.dto.ViewTrend;
+import ru.practicum.stats.dto.ViewWindowStats;
 import ru.practicum.stats.service.exception.StatValidationException;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -28,6 +41,9 @@ import java.util.List;
 @Validated
 public class StatController {
     private final StatService statService;
+    private final ObjectMapper objectMapper;
+    @Value("${stat.stream.timeout-ms:30000}")
+    private long streamTimeoutMs;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
@@ -36,7 +52,14 @@ public class StatController {
         statService.saveHit(hitCreate);
     }
 
-    @GetMapping("/stats")
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void createHits(@RequestBody List<@Valid EndpointHitCreate> hitCreates) {
+        log.info("STAT CONTROLLER: Create hits batch of size: {}", hitCreates.size());
+        statService.saveHits(hitCreates);
+    }
+
+    @GetMapping(value = "/stats", produces = {MediaType.APPLICATION_JSON_VALUE, StatBinaryCodec.MEDIA_TYPE_VALUE})
     public List<ViewStats> getStats(@RequestParam
                                         @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
                                         @NotNull
@@ -46,12 +69,122 @@ public class StatController {
                                         @NotNull
                                         LocalDateTime end,
                                     @RequestParam(required = false) List<String> uris,
+                                    @RequestParam(required = false) String uriPrefix,
+                                    @RequestParam(required = false) String uriGlob,
+                                    @RequestParam(required = false) String app,
                                     @RequestParam(defaultValue = "false") boolean unique) {
-        log.info("STAT CONTROLLER: Get stats: {}, {}, {}, {}", start, end, uris, unique);
+        log.info("STAT CONTROLLER: Get stats: {}, {}, {}, {}, {}, {}, {}",
+                start, end, uris, uriPrefix, uriGlob, app, unique);
+        if (end.isBefore(start)) {
+            throw new StatValidationException("Start date must be before end date");
+        }
+        return statService.getStats(new StatQuery(start, end, uris, uriPrefix, uriGlob, app, unique));
+    }
+
+    @PostMapping(value = "/stats/query",
+            produces = {MediaType.APPLICATION_JSON_VALUE, StatBinaryCodec.MEDIA_TYPE_VALUE})
+    public List<ViewStats> queryStats(@Valid @RequestBody StatQueryRequest request) {
+        log.info("STAT CONTROLLER: Query stats: {}, {}, {} uris, {}, {}, {}, {}", request.getStart(),
+                request.getEnd(), request.getUris() == null ? 0 : request.getUris().size(), request.getUriPrefix(),
+                request.getUriGlob(), request.getApp(), request.isUnique());
+        if (request.getEnd().isBefore(request.getStart())) {
+            throw new StatValidationException("Start date must be before end date");
+        }
+        return statService.getStats(new StatQuery(request.getStart(), request.getEnd(), request.getUris(),
+                request.getUriPrefix(), request.getUriGlob(), request.getApp(), request.isUnique()));
+    }
+
+    @PostMapping("/stats/batch")
+    public List<ViewWindowStats> getBatchStats(@RequestBody List<@Valid StatWindowQuery> windows) {
+        log.info("STAT CONTROLLER: Get batch stats for {} windows", windows.size());
+        return statService.getBatchStats(windows);
+    }
+
+    @GetMapping("/stats/top")
+    public List<ViewStats> getTopStats(@RequestParam
+                                           @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+                                           @NotNull
+                                           LocalDateTime start,
+                                       @RequestParam
+                                           @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+                                           @NotNull
+                                           LocalDateTime end,
+                                       @RequestParam(defaultValue = "10") @Positive int n,
+                                       @RequestParam(defaultValue = "false") boolean unique) {
+        log.info("STAT CONTROLLER: Get top stats: {}, {}, {}, {}", start, end, n, unique);
+        if (end.isBefore(start)) {
+            throw new StatValidationException("Start date must be before end date");
+        }
+        return statService.getTopStats(start, end, n, unique);
+    }
+
+    @GetMapping("/stats/trending")
+    public List<ViewTrend> getTrending(@RequestParam(defaultValue = "15m") String window,
+                                       @RequestParam(defaultValue = "10") @Positive int n) {
+        log.info("STAT CONTROLLER: Get trending: {}, {}", window, n);
+        return statService.getTrending(window, n);
+    }
+
+    @GetMapping("/stats/timeseries")
+    public List<ViewTimeSeries> getTimeSeries(@RequestParam
+                                                  @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+                                                  @NotNull
+                                                  LocalDateTime start,
+                                              @RequestParam
+                                                  @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+                                                  @NotNull
+                                                  LocalDateTime end,
+                                              @RequestParam(required = false) List<String> uris,
+                                              @RequestParam(required = false) String uriPrefix,
+                                              @RequestParam(required = false) String uriGlob,
+                                              @RequestParam(required = false) String app,
+                                              @RequestParam(defaultValue = "1h") String step,
+                                              @RequestParam(defaultValue = "false") boolean unique) {
+        log.info("STAT CONTROLLER: Get time series: {}, {}, {}, {}, {}, {}, {}, {}",
+                start, end, uris, uriPrefix, uriGlob, app, step, unique);
+        if (end.isBefore(start)) {
+            throw new StatValidationException("Start date must be before end date");
+        }
+        return statService.getTimeSeries(new StatQuery(start, end, uris, uriPrefix, uriGlob, app, unique), step);
+    }
+
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamStats(@RequestParam
+                                                 @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+                                                 @NotNull
+                                                 LocalDateTime start,
+                                             @RequestParam
+                                                 @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+                                                 @NotNull
+                                                 LocalDateTime end,
+                                             @RequestParam(required = false) List<String> uris,
+                                             @RequestParam(required = false) String uriPrefix,
+                                             @RequestParam(required = false) String uriGlob,
+                                             @RequestParam(required = false) String app,
+                                             @RequestParam(defaultValue = "false") boolean unique) {
+        log.info("STAT CONTROLLER: Stream stats: {}, {}, {}, {}, {}, {}, {}",
+                start, end, uris, uriPrefix, uriGlob, app, unique);
         if (end.isBefore(start)) {
             throw new StatValidationException("Start date must be before end date");
         }
-        return statService.getStats(start, end, uris, unique);
+        // resolved before the response is committed, so that invalid queries still get a 400
+        StatStream stream = statService.streamStats(new StatQuery(start, end, uris, uriPrefix, uriGlob, app, unique));
+        // rows are written while the query still holds its connection and read locks, so a client
+        // that reads too slowly is cut off after stat.stream.timeout-ms
+        return outputStream -> {
+            long deadline = System.currentTimeMillis() + streamTimeoutMs;
+            stream.forEach(stats -> {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new UncheckedIOException(new IOException("Stats stream exceeded " + streamTimeoutMs + " ms"));
+                }
+                try {
+                    outputStream.write(objectMapper.writeValueAsBytes(stats));
+                    outputStream.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        };
     }
 
 }
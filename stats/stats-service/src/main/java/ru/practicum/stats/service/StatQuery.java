@@ -0,0 +1,13 @@
+package ru.practicum.stats.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record StatQuery(LocalDateTime start,
+                        LocalDateTime end,
+                        List<String> uris,
+                        String uriPrefix,
+                        String uriGlob,
+                        String app,
+                        boolean unique) {
+}
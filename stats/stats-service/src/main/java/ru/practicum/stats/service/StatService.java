@@ -1,7 +1,11 @@
 package ru.practicum.stats.service;
 
 import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.StatWindowQuery;
 import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewTimeSeries;
+import ru.practicum.stats.dto.ViewTrend;
+import ru.practicum.stats.dto.ViewWindowStats;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -9,5 +13,17 @@ import java.util.List;
 public interface StatService {
     void saveHit(EndpointHitCreate hitCreate);
 
-    List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+    void saveHits(List<EndpointHitCreate> hitCreates);
+
+    List<ViewStats> getStats(StatQuery query);
+
+    List<ViewWindowStats> getBatchStats(List<StatWindowQuery> windows);
+
+    List<ViewStats> getTopStats(LocalDateTime start, LocalDateTime end, int n, boolean unique);
+
+    List<ViewTimeSeries> getTimeSeries(StatQuery query, String step);
+
+    List<ViewTrend> getTrending(String window, int n);
+
+    StatStream streamStats(StatQuery query);
 }
@@ -1,34 +1,200 @@
 package ru.practicum.stats.service;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.StatWindowQuery;
 import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewTimeSeries;
+import ru.practicum.stats.dto.ViewTrend;
+import ru.practicum.stats.dto.ViewWindowStats;
+import ru.practicum.stats.service.batch.BatchStatsEngine;
+import ru.practicum.stats.service.cache.StatQueryCache;
+import ru.practicum.stats.service.exception.StatValidationException;
+import ru.practicum.stats.service.ingest.IngestAdmission;
+import ru.practicum.stats.service.top.TopHitsTracker;
+import ru.practicum.stats.service.trending.TrendingTracker;
+import ru.practicum.stats.service.uri.UriIndex;
+import ru.practicum.stats.service.wal.HitWriteAheadLog;
 
 import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class StatServiceImpl implements StatService {
-    private final StatRepository statRepository;
+    private final StatStorage statStorage;
+    private final Optional<HitWriteAheadLog> writeAheadLog;
+    private final List<HitListener> hitListeners;
+    private final HitListenerGate hitListenerGate;
+    private final TopHitsTracker topHitsTracker;
+    private final TrendingTracker trendingTracker;
+    private final Optional<StatQueryCache> queryCache;
+    private final UriIndex uriIndex;
+    private final IngestAdmission ingestAdmission;
+    private final BatchStatsEngine batchStatsEngine;
+    @Value("${stat.timeseries.max-buckets:10000}")
+    private int maxTimeSeriesBuckets;
+    @Value("${stat.batch.max-windows:1000}")
+    private int maxBatchWindows;
+    @Value("${stat.query.max-uris:10000}")
+    private int maxQueryUris;
 
     @Override
     public void saveHit(EndpointHitCreate hitCreate) {
-        Hit hit = Hit.builder()
-                .app(hitCreate.getApp())
-                .uri(hitCreate.getUri())
-                .ip(hitCreate.getIp())
-                .created(hitCreate.getTimestamp())
-                .build();
-         statRepository.save(hit);
+        saveHits(List.of(hitCreate));
     }
 
     @Override
-    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
-        if (unique) {
-            return statRepository.findUniqueHits(start, end, uris);
+    public void saveHits(List<EndpointHitCreate> hitCreates) {
+        if (hitCreates.isEmpty()) {
+            return;
         }
-        return statRepository.findAllHits(start, end, uris);
+        if (writeAheadLog.isPresent()) {
+            writeAheadLog.get().append(hitCreates);
+            return;
+        }
+        ingestAdmission.admit(() -> hitListenerGate.write(() -> {
+            statStorage.saveAll(hitCreates);
+            hitListeners.forEach(listener -> listener.onHits(hitCreates));
+        }));
+    }
+
+    @Override
+    public List<ViewStats> getStats(StatQuery query) {
+        List<String> uris = resolveUris(query);
+        if (uris != null && uris.isEmpty()) {
+            return List.of();
+        }
+        List<ViewStats> stats = queryCache.isPresent()
+                ? queryCache.get().getStats(query.start(), query.end(), uris, query.unique())
+                : statStorage.getStats(query.start(), query.end(), uris, query.unique());
+        if (query.app() == null) {
+            return stats;
+        }
+        return stats.stream()
+                .filter(row -> row.getApp().equals(query.app()))
+                .toList();
+    }
+
+    @Override
+    public List<ViewWindowStats> getBatchStats(List<StatWindowQuery> windows) {
+        if (windows.size() > maxBatchWindows) {
+            throw new StatValidationException("Batch of " + windows.size() + " windows exceeds the limit of "
+                    + maxBatchWindows);
+        }
+        if (windows.stream().anyMatch(window -> window.getEnd().isBefore(window.getStart()))) {
+            throw new StatValidationException("Start date must be before end date");
+        }
+        return batchStatsEngine.getStats(windows);
+    }
+
+    @Override
+    public List<ViewStats> getTopStats(LocalDateTime start, LocalDateTime end, int n, boolean unique) {
+        List<String> candidateUris = topHitsTracker.findCandidateUris(start, end, n);
+        if (candidateUris != null && candidateUris.isEmpty()) {
+            return List.of();
+        }
+        List<ViewStats> stats = statStorage.getStats(start, end, candidateUris, unique);
+        if (unique && candidateUris != null) {
+            // the candidates are the top by hits; a uri has at most as many unique ips as hits, so
+            // only the uris whose hits can reach the n-th unique count of the candidates may beat it
+            long threshold = stats.size() < n ? 1 : stats.get(n - 1).getHits();
+            List<String> reachingUris = topHitsTracker.findUrisReaching(start, end, threshold);
+            if (reachingUris == null) {
+                stats = statStorage.getStats(start, end, null, true);
+            } else {
+                Set<String> queried = new HashSet<>(candidateUris);
+                List<String> moreUris = reachingUris.stream()
+                        .filter(uri -> !queried.contains(uri))
+                        .toList();
+                if (!moreUris.isEmpty()) {
+                    stats = Stream.concat(stats.stream(), statStorage.getStats(start, end, moreUris, true).stream())
+                            .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                            .toList();
+                }
+            }
+        }
+        return stats.stream()
+                .limit(n)
+                .toList();
+    }
+
+    @Override
+    public List<ViewTrend> getTrending(String window, int n) {
+        return trendingTracker.findTrending(window, n);
+    }
+
+    @Override
+    public List<ViewTimeSeries> getTimeSeries(StatQuery query, String step) {
+        RollupGranularity granularity = RollupGranularity.fromStep(step);
+        long buckets = granularity.getUnit().between(granularity.floor(query.start()), granularity.floor(query.end()))
+                + 1;
+        if (buckets > maxTimeSeriesBuckets) {
+            throw new StatValidationException("Time series of " + buckets + " buckets exceeds the limit of "
+                    + maxTimeSeriesBuckets + ", use a coarser step");
+        }
+        List<String> uris = resolveUris(query);
+        if (uris != null && uris.isEmpty()) {
+            return List.of();
+        }
+        List<ViewTimeSeries> series = statStorage.getTimeSeries(query.start(), query.end(), uris, granularity,
+                query.unique());
+        if (query.app() == null) {
+            return series;
+        }
+        return series.stream()
+                .filter(row -> row.getApp().equals(query.app()))
+                .toList();
+    }
+
+    @Override
+    public StatStream streamStats(StatQuery query) {
+        List<String> uris = resolveUris(query);
+        if (uris != null && uris.isEmpty()) {
+            return consumer -> {
+            };
+        }
+        return consumer -> statStorage.streamStats(query.start(), query.end(), uris, query.unique(), row -> {
+            if (query.app() == null || row.getApp().equals(query.app())) {
+                consumer.accept(row);
+            }
+        });
+    }
+
+    /**
+     * Narrows the uri filters of the query to a list of uris, or null when the query has none.
+     * Explicit uri lists are limited to {@code stat.query.max-uris}, larger lists have to be split
+     * by the caller.
+     */
+    private List<String> resolveUris(StatQuery query) {
+        List<String> uris = query.uris() == null || query.uris().isEmpty() ? null : query.uris();
+        if (uris != null && uris.size() > maxQueryUris) {
+            throw new StatValidationException("Query of " + uris.size() + " uris exceeds the limit of "
+                    + maxQueryUris + ", split it into several queries");
+        }
+        if (query.uriPrefix() != null) {
+            uris = intersect(uris, uriIndex.findByPrefix(query.uriPrefix()));
+        }
+        if (query.uriGlob() != null) {
+            uris = intersect(uris, uriIndex.findByGlob(query.uriGlob()));
+        }
+        return uris;
+    }
+
+    private static List<String> intersect(List<String> uris, List<String> matches) {
+        if (uris == null) {
+            return matches;
+        }
+        Set<String> allowed = new HashSet<>(matches);
+        return uris.stream()
+                .filter(allowed::contains)
+                .toList();
     }
 }
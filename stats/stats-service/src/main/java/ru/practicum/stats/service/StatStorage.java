@@ -0,0 +1,60 @@
+package ru.practicum.stats.service;
+
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewTimeSeries;
+import ru.practicum.stats.service.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public interface StatStorage {
+    void saveAll(List<EndpointHitCreate> hits);
+
+    List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+
+    List<ViewTimeSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                       RollupGranularity step, boolean unique);
+
+    /**
+     * Per (app, uri) sketches of the unique ips in [start, end], or null when the storage cannot
+     * produce mergeable sketches.
+     */
+    default Map<ViewKey, HyperLogLog> getUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return null;
+    }
+
+    /**
+     * Stats of several ranges, in the order of the ranges. Storages that can should answer them
+     * with fewer reads than one per range, which is what the default does.
+     */
+    default List<List<ViewStats>> getStats(List<StatQuery> ranges) {
+        return ranges.stream()
+                .map(range -> getStats(range.start(), range.end(), range.uris(), range.unique()))
+                .toList();
+    }
+
+    /**
+     * Unique ip sketches of several ranges, in the order of the ranges, or null when the storage
+     * cannot produce mergeable sketches.
+     */
+    default List<Map<ViewKey, HyperLogLog>> getUniqueSketches(List<StatQuery> ranges) {
+        List<Map<ViewKey, HyperLogLog>> sketches = new ArrayList<>(ranges.size());
+        for (StatQuery range : ranges) {
+            Map<ViewKey, HyperLogLog> rangeSketches = getUniqueSketches(range.start(), range.end(), range.uris());
+            if (rangeSketches == null) {
+                return null;
+            }
+            sketches.add(rangeSketches);
+        }
+        return sketches;
+    }
+
+    default void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                             Consumer<ViewStats> consumer) {
+        getStats(start, end, uris, unique).forEach(consumer);
+    }
+}
@@ -0,0 +1,14 @@
+package ru.practicum.stats.service;
+
+import ru.practicum.stats.dto.ViewStats;
+
+import java.util.function.Consumer;
+
+/**
+ * Stats of a query that has already been validated and had its uris resolved. The rows are read
+ * from the storage only when the stream is consumed.
+ */
+@FunctionalInterface
+public interface StatStream {
+    void forEach(Consumer<ViewStats> consumer);
+}
@@ -0,0 +1,37 @@
+package ru.practicum.stats.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.practicum.stats.codec.StatBinaryMessageConverter;
+
+import java.util.List;
+
+@Configuration
+@RequiredArgsConstructor
+public class StatWebConfig implements WebMvcConfigurer {
+    private final ObjectMapper objectMapper;
+    @Value("${stat.stream.timeout-ms:30000}")
+    private long streamTimeoutMs;
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // lets error responses of the streaming /stats endpoint be written as a single NDJSON line
+        MappingJackson2HttpMessageConverter ndjsonConverter = new MappingJackson2HttpMessageConverter(objectMapper);
+        ndjsonConverter.setSupportedMediaTypes(List.of(MediaType.APPLICATION_NDJSON));
+        converters.add(ndjsonConverter);
+        converters.add(new StatBinaryMessageConverter());
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // the streaming /stats endpoint writes asynchronously, a client that stops reading is cut off
+        configurer.setDefaultTimeout(streamTimeoutMs);
+    }
+}
@@ -0,0 +1,12 @@
+package ru.practicum.stats.service;
+
+/**
+ * How unique hits are counted, set with {@code stat.unique.mode}. EXACT, the default, counts
+ * distinct ips of the raw hits; APPROXIMATE merges the HyperLogLog sketches of the rollups, which
+ * is faster on long ranges but about 1.6% off; BITMAP merges per-day ip bitmaps.
+ */
+public enum UniqueMode {
+    APPROXIMATE,
+    EXACT,
+    BITMAP
+}
@@ -0,0 +1,4 @@
+package ru.practicum.stats.service;
+
+public record ViewKey(String app, String uri) {
+}
@@ -0,0 +1,191 @@
+package ru.practicum.stats.service.batch;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.StatWindowQuery;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewWindowStats;
+import ru.practicum.stats.service.StatQuery;
+import ru.practicum.stats.service.StatStorage;
+import ru.practicum.stats.service.ViewKey;
+import ru.practicum.stats.service.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Answers many (uri, start, end, unique) windows at once. The windows are cut at every start and
+ * end into elementary intervals, and each interval is read from the storage once for all uris
+ * whose windows cover it, so overlapping windows share the scan of their common range. Hit counts
+ * of the intervals are summed per window; unique counts are merged from the interval sketches when
+ * the storage provides them, otherwise windows with the same range are read together. All
+ * intervals or ranges go to the storage in one call, which reads them in a few set-based queries.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BatchStatsEngine {
+    private final StatStorage statStorage;
+
+    public List<ViewWindowStats> getStats(List<StatWindowQuery> windows) {
+        List<Map<String, Long>> counts = new ArrayList<>();
+        List<Integer> countWindows = new ArrayList<>();
+        List<Integer> uniqueWindows = new ArrayList<>();
+        for (int i = 0; i < windows.size(); i++) {
+            counts.add(new LinkedHashMap<>());
+            (windows.get(i).isUnique() ? uniqueWindows : countWindows).add(i);
+        }
+
+        int reads = countHits(windows, countWindows, counts);
+        if (!uniqueWindows.isEmpty()) {
+            int sketchReads = mergeSketches(windows, uniqueWindows, counts);
+            reads += sketchReads >= 0 ? sketchReads : countUniqueHits(windows, uniqueWindows, counts);
+        }
+        log.debug("STAT BATCH: answered {} windows with {} storage reads", windows.size(), reads);
+
+        List<ViewWindowStats> result = new ArrayList<>();
+        for (int i = 0; i < windows.size(); i++) {
+            StatWindowQuery window = windows.get(i);
+            counts.get(i).forEach((app, hits) -> result.add(new ViewWindowStats(app, window.getUri(),
+                    window.getStart(), window.getEnd(), window.isUnique(), hits)));
+        }
+        return result;
+    }
+
+    private int countHits(List<StatWindowQuery> windows, List<Integer> indexes, List<Map<String, Long>> counts) {
+        List<Interval> intervals = intervals(windows, indexes);
+        if (intervals.isEmpty()) {
+            return 0;
+        }
+        List<List<ViewStats>> stats = statStorage.getStats(intervals.stream()
+                .map(interval -> interval.toQuery(windows, false))
+                .toList());
+        for (int p = 0; p < intervals.size(); p++) {
+            Map<String, List<ViewStats>> rowsByUri = groupByUri(stats.get(p));
+            for (int i : intervals.get(p).covering()) {
+                for (ViewStats row : rowsByUri.getOrDefault(windows.get(i).getUri(), List.of())) {
+                    counts.get(i).merge(row.getApp(), row.getHits(), Long::sum);
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Merges the unique ip sketches of the elementary intervals per window.
+     *
+     * @return the number of storage reads, or -1 when the storage has no mergeable sketches
+     */
+    private int mergeSketches(List<StatWindowQuery> windows, List<Integer> indexes, List<Map<String, Long>> counts) {
+        List<Interval> intervals = intervals(windows, indexes);
+        List<Map<ViewKey, HyperLogLog>> sketches = statStorage.getUniqueSketches(intervals.stream()
+                .map(interval -> interval.toQuery(windows, true))
+                .toList());
+        if (sketches == null) {
+            return -1;
+        }
+        Map<Integer, Map<String, HyperLogLog>> merged = new HashMap<>();
+        for (int p = 0; p < intervals.size(); p++) {
+            for (Map.Entry<ViewKey, HyperLogLog> sketch : sketches.get(p).entrySet()) {
+                for (int i : intervals.get(p).covering()) {
+                    if (windows.get(i).getUri().equals(sketch.getKey().uri())) {
+                        merged.computeIfAbsent(i, window -> new LinkedHashMap<>())
+                                .computeIfAbsent(sketch.getKey().app(), app -> new HyperLogLog())
+                                .merge(sketch.getValue());
+                    }
+                }
+            }
+        }
+        merged.forEach((i, windowSketches) ->
+                windowSketches.forEach((app, sketch) -> counts.get(i).put(app, sketch.estimate())));
+        return 1;
+    }
+
+    private int countUniqueHits(List<StatWindowQuery> windows, List<Integer> indexes, List<Map<String, Long>> counts) {
+        Map<List<LocalDateTime>, List<Integer>> ranges = new LinkedHashMap<>();
+        for (int i : indexes) {
+            ranges.computeIfAbsent(List.of(windows.get(i).getStart(), windows.get(i).getEnd()),
+                    range -> new ArrayList<>()).add(i);
+        }
+        List<List<Integer>> rangeWindows = List.copyOf(ranges.values());
+        List<List<ViewStats>> stats = statStorage.getStats(ranges.entrySet().stream()
+                .map(range -> new StatQuery(range.getKey().get(0), range.getKey().get(1),
+                        uris(windows, range.getValue()), null, null, null, true))
+                .toList());
+        for (int r = 0; r < rangeWindows.size(); r++) {
+            Map<String, List<ViewStats>> rowsByUri = groupByUri(stats.get(r));
+            for (int i : rangeWindows.get(r)) {
+                for (ViewStats row : rowsByUri.getOrDefault(windows.get(i).getUri(), List.of())) {
+                    counts.get(i).put(row.getApp(), row.getHits());
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * The elementary intervals covered by at least one of the windows, with the windows covering them.
+     */
+    private static List<Interval> intervals(List<StatWindowQuery> windows, List<Integer> indexes) {
+        List<Interval> intervals = new ArrayList<>();
+        List<LocalDateTime> points = List.copyOf(boundaries(windows, indexes));
+        for (int p = 0; p + 1 < points.size(); p++) {
+            List<Integer> covering = covering(windows, indexes, points.get(p), points.get(p + 1));
+            if (!covering.isEmpty()) {
+                intervals.add(new Interval(points.get(p), points.get(p + 1), covering));
+            }
+        }
+        return intervals;
+    }
+
+    /**
+     * Window starts and the instants right after window ends, in order.
+     */
+    private static NavigableSet<LocalDateTime> boundaries(List<StatWindowQuery> windows, List<Integer> indexes) {
+        NavigableSet<LocalDateTime> points = new TreeSet<>();
+        for (int i : indexes) {
+            points.add(windows.get(i).getStart());
+            points.add(windows.get(i).getEnd().plus(1, ChronoUnit.MICROS));
+        }
+        return points;
+    }
+
+    private static List<Integer> covering(List<StatWindowQuery> windows, List<Integer> indexes,
+                                          LocalDateTime from, LocalDateTime to) {
+        return indexes.stream()
+                .filter(i -> !windows.get(i).getStart().isAfter(from)
+                        && !windows.get(i).getEnd().plus(1, ChronoUnit.MICROS).isBefore(to))
+                .toList();
+    }
+
+    private static List<String> uris(List<StatWindowQuery> windows, List<Integer> indexes) {
+        return indexes.stream()
+                .map(i -> windows.get(i).getUri())
+                .distinct()
+                .toList();
+    }
+
+    private static Map<String, List<ViewStats>> groupByUri(List<ViewStats> rows) {
+        Map<String, List<ViewStats>> rowsByUri = new HashMap<>();
+        rows.forEach(row -> rowsByUri.computeIfAbsent(row.getUri(), uri -> new ArrayList<>()).add(row));
+        return rowsByUri;
+    }
+
+    /**
+     * An elementary interval [from, to) and the windows covering it.
+     */
+    private record Interval(LocalDateTime from, LocalDateTime to, List<Integer> covering) {
+        StatQuery toQuery(List<StatWindowQuery> windows, boolean unique) {
+            return new StatQuery(from, to.minus(1, ChronoUnit.MICROS), uris(windows, covering), null, null, null,
+                    unique);
+        }
+    }
+}
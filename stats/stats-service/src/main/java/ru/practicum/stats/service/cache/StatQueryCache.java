@@ -0,0 +1,279 @@
+package ru.practicum.stats.service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.service.HitListener;
+import ru.practicum.stats.service.RollupGranularity;
+import ru.practicum.stats.service.StatStorage;
+import ru.practicum.stats.service.ViewKey;
+import ru.practicum.stats.service.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Caches /stats results per (start, uris, unique) up to the last closed bucket before {@code end}.
+ * A request recomputes only the buckets closed since the cached entry plus the open tail bucket.
+ * Entries are evicted in LRU order once their estimated size exceeds {@code stat.cache.max-bytes},
+ * and dropped when a late hit lands in their closed range; entries are indexed by uri, so a late
+ * hit only checks the entries of its uri and those without a uri filter.
+ */
+@Component
+@ConditionalOnProperty(name = "stat.cache.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class StatQueryCache implements HitListener {
+    private final StatStorage statStorage;
+    private final RollupGranularity bucket;
+    private final long maxBytes;
+    private final LinkedHashMap<CacheKey, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Map<CacheKey, CacheEntry>> entriesByUri = new HashMap<>();
+    private final Map<CacheKey, CacheEntry> allUriEntries = new HashMap<>();
+    private final Counter hits;
+    private final Counter partialHits;
+    private final Counter misses;
+    private final Counter bypasses;
+    private final Counter evictions;
+    private final Counter invalidations;
+    private long bytes;
+    private long generation;
+    private volatile LocalDateTime latestClosedEnd = LocalDateTime.MIN;
+
+    public StatQueryCache(StatStorage statStorage,
+                          MeterRegistry meterRegistry,
+                          @Value("${stat.cache.bucket:MINUTE}") RollupGranularity bucket,
+                          @Value("${stat.cache.max-bytes:67108864}") long maxBytes) {
+        this.statStorage = statStorage;
+        this.bucket = bucket;
+        this.maxBytes = maxBytes;
+        this.hits = meterRegistry.counter("stat.cache.requests", "result", "hit");
+        this.partialHits = meterRegistry.counter("stat.cache.requests", "result", "partial");
+        this.misses = meterRegistry.counter("stat.cache.requests", "result", "miss");
+        this.bypasses = meterRegistry.counter("stat.cache.requests", "result", "bypass");
+        this.evictions = meterRegistry.counter("stat.cache.evictions");
+        this.invalidations = meterRegistry.counter("stat.cache.invalidations");
+        Gauge.builder("stat.cache.entries", this, StatQueryCache::size).register(meterRegistry);
+        Gauge.builder("stat.cache.memory", this, StatQueryCache::estimatedBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("stat.cache.hit.ratio", this, StatQueryCache::hitRatio).register(meterRegistry);
+    }
+
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime closedEnd = bucket.floor(end.isBefore(now) ? end : now);
+        if (!closedEnd.isAfter(start)) {
+            bypasses.increment();
+            return statStorage.getStats(start, end, uris, unique);
+        }
+        CacheKey key = new CacheKey(start, normalize(uris), unique);
+        CacheEntry cached;
+        long observedGeneration;
+        synchronized (this) {
+            cached = entries.get(key);
+            observedGeneration = generation;
+            if (closedEnd.isAfter(latestClosedEnd)) {
+                latestClosedEnd = closedEnd;
+            }
+        }
+
+        CacheEntry closed;
+        if (cached != null && cached.closedEnd().equals(closedEnd)) {
+            hits.increment();
+            closed = cached;
+        } else if (cached != null && cached.closedEnd().isBefore(closedEnd)) {
+            CacheEntry delta = load(key, cached.closedEnd(), closedEnd.minus(1, ChronoUnit.MICROS), closedEnd);
+            closed = delta == null ? null : cached.merge(delta, closedEnd);
+            partialHits.increment();
+            put(key, closed, observedGeneration);
+        } else {
+            closed = load(key, start, closedEnd.minus(1, ChronoUnit.MICROS), closedEnd);
+            misses.increment();
+            if (cached == null) {
+                put(key, closed, observedGeneration);
+            }
+        }
+        if (closed == null) {
+            return statStorage.getStats(start, end, uris, unique);
+        }
+        CacheEntry tail = load(key, closedEnd, end, closedEnd);
+        return tail == null ? statStorage.getStats(start, end, uris, unique) : closed.merge(tail, end).toViewStats();
+    }
+
+    @Override
+    public void onHits(List<EndpointHitCreate> newHits) {
+        LocalDateTime closedUntil = latestClosedEnd;
+        NavigableSet<LocalDateTime> late = new TreeSet<>();
+        Map<String, NavigableSet<LocalDateTime>> lateByUri = new HashMap<>();
+        for (EndpointHitCreate hit : newHits) {
+            if (hit.getTimestamp().isBefore(closedUntil)) {
+                late.add(hit.getTimestamp());
+                lateByUri.computeIfAbsent(hit.getUri(), uri -> new TreeSet<>()).add(hit.getTimestamp());
+            }
+        }
+        if (late.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            generation++;
+            invalidate(allUriEntries, late);
+            lateByUri.forEach((uri, timestamps) -> {
+                Map<CacheKey, CacheEntry> uriEntries = entriesByUri.get(uri);
+                if (uriEntries != null) {
+                    invalidate(uriEntries, timestamps);
+                }
+            });
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long estimatedBytes() {
+        return bytes;
+    }
+
+    private double hitRatio() {
+        double served = hits.count() + partialHits.count();
+        double total = served + misses.count();
+        return total == 0 ? 0 : served / total;
+    }
+
+    private CacheEntry load(CacheKey key, LocalDateTime from, LocalDateTime to, LocalDateTime closedEnd) {
+        if (key.unique()) {
+            Map<ViewKey, HyperLogLog> sketches = statStorage.getUniqueSketches(from, to, key.uris());
+            return sketches == null ? null : CacheEntry.ofSketches(closedEnd, sketches);
+        }
+        Map<ViewKey, Long> counts = new HashMap<>();
+        statStorage.getStats(from, to, key.uris(), false)
+                .forEach(stats -> counts.put(new ViewKey(stats.getApp(), stats.getUri()), stats.getHits()));
+        return CacheEntry.ofCounts(closedEnd, counts);
+    }
+
+    private synchronized void put(CacheKey key, CacheEntry entry, long observedGeneration) {
+        if (entry == null || generation != observedGeneration || entry.weight() > maxBytes) {
+            return;
+        }
+        CacheEntry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.weight();
+        }
+        bytes += entry.weight();
+        index(key, entry);
+        Iterator<Map.Entry<CacheKey, CacheEntry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<CacheKey, CacheEntry> evicted = eldest.next();
+            bytes -= evicted.getValue().weight();
+            eldest.remove();
+            unindex(evicted.getKey());
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Drops the entries whose closed range contains one of the sorted timestamps.
+     */
+    private void invalidate(Map<CacheKey, CacheEntry> candidates, NavigableSet<LocalDateTime> timestamps) {
+        List<CacheKey> stale = candidates.entrySet().stream()
+                .filter(entry -> {
+                    LocalDateTime first = timestamps.ceiling(entry.getKey().start());
+                    return first != null && first.isBefore(entry.getValue().closedEnd());
+                })
+                .map(Map.Entry::getKey)
+                .toList();
+        for (CacheKey key : stale) {
+            bytes -= entries.remove(key).weight();
+            unindex(key);
+            invalidations.increment();
+        }
+    }
+
+    private void index(CacheKey key, CacheEntry entry) {
+        if (key.uris() == null) {
+            allUriEntries.put(key, entry);
+            return;
+        }
+        for (String uri : key.uris()) {
+            entriesByUri.computeIfAbsent(uri, k -> new HashMap<>()).put(key, entry);
+        }
+    }
+
+    private void unindex(CacheKey key) {
+        if (key.uris() == null) {
+            allUriEntries.remove(key);
+            return;
+        }
+        for (String uri : key.uris()) {
+            Map<CacheKey, CacheEntry> uriEntries = entriesByUri.get(uri);
+            uriEntries.remove(key);
+            if (uriEntries.isEmpty()) {
+                entriesByUri.remove(uri);
+            }
+        }
+    }
+
+    private static List<String> normalize(List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return null;
+        }
+        return uris.stream().distinct().sorted().toList();
+    }
+
+    private record CacheKey(LocalDateTime start, List<String> uris, boolean unique) {
+    }
+
+    private record CacheEntry(LocalDateTime closedEnd,
+                              Map<ViewKey, Long> counts,
+                              Map<ViewKey, HyperLogLog> sketches,
+                              long weight) {
+        private static final long ROW_BYTES = 128;
+
+        static CacheEntry ofCounts(LocalDateTime closedEnd, Map<ViewKey, Long> counts) {
+            return new CacheEntry(closedEnd, counts, null, counts.size() * ROW_BYTES);
+        }
+
+        static CacheEntry ofSketches(LocalDateTime closedEnd, Map<ViewKey, HyperLogLog> sketches) {
+            return new CacheEntry(closedEnd, null, sketches, sketches.size() * (ROW_BYTES + HyperLogLog.REGISTERS));
+        }
+
+        CacheEntry merge(CacheEntry other, LocalDateTime mergedEnd) {
+            if (counts != null) {
+                Map<ViewKey, Long> merged = new HashMap<>(counts);
+                other.counts.forEach((key, count) -> merged.merge(key, count, Long::sum));
+                return ofCounts(mergedEnd, merged);
+            }
+            Map<ViewKey, HyperLogLog> merged = new HashMap<>(sketches);
+            other.sketches.forEach((key, sketch) -> merged.merge(key, sketch, (left, right) -> {
+                HyperLogLog union = left.copy();
+                union.merge(right);
+                return union;
+            }));
+            return ofSketches(mergedEnd, merged);
+        }
+
+        List<ViewStats> toViewStats() {
+            return (counts != null
+                    ? counts.entrySet().stream().map(entry -> new ViewStats(
+                            entry.getKey().app(), entry.getKey().uri(), entry.getValue()))
+                    : sketches.entrySet().stream().map(entry -> new ViewStats(
+                            entry.getKey().app(), entry.getKey().uri(), entry.getValue().estimate())))
+                    .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.practicum.stats.service.columnar;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewTimeSeries;
+import ru.practicum.stats.service.HitJdbcRepository;
+import ru.practicum.stats.service.RollupGranularity;
+import ru.practicum.stats.service.StatStorage;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@ConditionalOnProperty(name = "stat.storage", havingValue = "columnar")
+@RequiredArgsConstructor
+@Slf4j
+public class ColumnarStatStorage implements StatStorage {
+    private static final int LOAD_BATCH_SIZE = 10_000;
+
+    private final HitJdbcRepository hitJdbcRepository;
+    @Value("${stat.columnar.chunk-size:65536}")
+    private int chunkSize;
+    @Value("${stat.retention.raw-days:0}")
+    private int retentionRawDays;
+    @Value("${stat.segments.enabled:false}")
+    private boolean segmentsEnabled;
+    private HitColumnStore columnStore;
+
+    @PostConstruct
+    public void load() {
+        // the store keeps every hit it loaded and never evicts, while retention and sealing remove
+        // the rows it was loaded from, so answers would change with the next restart
+        if (retentionRawDays > 0 || segmentsEnabled) {
+            throw new IllegalStateException("stat.storage=columnar cannot be used with stat.retention.raw-days="
+                    + retentionRawDays + " or stat.segments.enabled=" + segmentsEnabled
+                    + ", it holds the whole hit history in memory");
+        }
+        columnStore = new HitColumnStore(chunkSize);
+        List<EndpointHitCreate> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+        hitJdbcRepository.forEachHit(hit -> {
+            batch.add(hit);
+            if (batch.size() == LOAD_BATCH_SIZE) {
+                columnStore.append(batch);
+                batch.clear();
+            }
+        });
+        columnStore.append(batch);
+        log.info("STAT COLUMNAR: loaded {} hits into {} chunks", columnStore.size(), columnStore.chunkCount());
+    }
+
+    @Override
+    @Transactional
+    public void saveAll(List<EndpointHitCreate> hits) {
+        hitJdbcRepository.saveAll(hits);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                columnStore.append(hits);
+            }
+        });
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        return columnStore.aggregate(start, end, uris, unique);
+    }
+
+    @Override
+    public List<ViewTimeSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                              RollupGranularity step, boolean unique) {
+        return columnStore.timeSeries(start, end, uris, step, unique);
+    }
+}
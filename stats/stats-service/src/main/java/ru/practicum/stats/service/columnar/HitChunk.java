@@ -0,0 +1,49 @@
+package ru.practicum.stats.service.columnar;
+
+class HitChunk {
+    final long[] timestamps;
+    final int[] apps;
+    final int[] uris;
+    final int[] ips;
+    private volatile int size;
+    private volatile long minTimestamp = Long.MAX_VALUE;
+    private volatile long maxTimestamp = Long.MIN_VALUE;
+
+    HitChunk(int capacity) {
+        timestamps = new long[capacity];
+        apps = new int[capacity];
+        uris = new int[capacity];
+        ips = new int[capacity];
+    }
+
+    void append(long timestamp, int app, int uri, int ip) {
+        int row = size;
+        timestamps[row] = timestamp;
+        apps[row] = app;
+        uris[row] = uri;
+        ips[row] = ip;
+        if (timestamp < minTimestamp) {
+            minTimestamp = timestamp;
+        }
+        if (timestamp > maxTimestamp) {
+            maxTimestamp = timestamp;
+        }
+        size = row + 1;
+    }
+
+    boolean isFull() {
+        return size == timestamps.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long minTimestamp() {
+        return minTimestamp;
+    }
+
+    long maxTimestamp() {
+        return maxTimestamp;
+    }
+}
@@ -0,0 +1,219 @@
+package ru.practicum.stats.service.columnar;
+
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewTimeSeries;
+import ru.practicum.stats.service.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Append-only columnar copy of the hits: epoch seconds in long[] and dictionary-encoded
+ * app, uri and ip in int[] columns, split into fixed-size chunks. A single writer appends
+ * under a lock; readers take a snapshot of chunk sizes and never block the writer.
+ */
+public class HitColumnStore {
+    private static final boolean[] NO_URIS = new boolean[0];
+
+    private final int chunkCapacity;
+    private final StringDictionary apps = new StringDictionary();
+    private final StringDictionary uris = new StringDictionary();
+    private final StringDictionary ips = new StringDictionary();
+    private final List<HitChunk> chunks = new CopyOnWriteArrayList<>();
+    private final Object appendLock = new Object();
+
+    public HitColumnStore(int chunkCapacity) {
+        this.chunkCapacity = chunkCapacity;
+    }
+
+    public void append(List<EndpointHitCreate> hits) {
+        synchronized (appendLock) {
+            for (EndpointHitCreate hit : hits) {
+                HitChunk chunk = chunks.isEmpty() ? null : chunks.getLast();
+                if (chunk == null || chunk.isFull()) {
+                    chunk = new HitChunk(chunkCapacity);
+                    chunks.add(chunk);
+                }
+                chunk.append(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC),
+                        apps.encode(hit.getApp()), uris.encode(hit.getUri()), ips.encode(hit.getIp()));
+            }
+        }
+    }
+
+    public long size() {
+        return chunks.stream().mapToLong(HitChunk::size).sum();
+    }
+
+    public int chunkCount() {
+        return chunks.size();
+    }
+
+    public List<ViewStats> aggregate(LocalDateTime start, LocalDateTime end, List<String> uriFilter, boolean unique) {
+        HitChunk[] snapshot = chunks.toArray(new HitChunk[0]);
+        int[] sizes = new int[snapshot.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            sizes[i] = snapshot[i].size();
+        }
+        int appCount = apps.size();
+        int uriCount = uris.size();
+
+        boolean[] allowedUris = allowedUris(uriFilter, uriCount);
+        if (allowedUris == NO_URIS) {
+            return List.of();
+        }
+
+        long from = toEpochSecondCeil(start);
+        long to = end.toEpochSecond(ZoneOffset.UTC);
+        long[][] counts = new long[appCount][];
+        BitSet[][] visitors = new BitSet[appCount][];
+        for (int i = 0; i < snapshot.length; i++) {
+            HitChunk chunk = snapshot[i];
+            int rows = sizes[i];
+            if (rows == 0 || chunk.maxTimestamp() < from || chunk.minTimestamp() > to) {
+                continue;
+            }
+            boolean wholeChunk = chunk.minTimestamp() >= from && chunk.maxTimestamp() <= to;
+            long[] timestamps = chunk.timestamps;
+            int[] appColumn = chunk.apps;
+            int[] uriColumn = chunk.uris;
+            int[] ipColumn = chunk.ips;
+            for (int row = 0; row < rows; row++) {
+                if (!wholeChunk && (timestamps[row] < from || timestamps[row] > to)) {
+                    continue;
+                }
+                int uri = uriColumn[row];
+                if (allowedUris != null && !allowedUris[uri]) {
+                    continue;
+                }
+                int app = appColumn[row];
+                if (unique) {
+                    if (visitors[app] == null) {
+                        visitors[app] = new BitSet[uriCount];
+                    }
+                    if (visitors[app][uri] == null) {
+                        visitors[app][uri] = new BitSet();
+                    }
+                    visitors[app][uri].set(ipColumn[row]);
+                } else {
+                    if (counts[app] == null) {
+                        counts[app] = new long[uriCount];
+                    }
+                    counts[app][uri]++;
+                }
+            }
+        }
+
+        List<ViewStats> result = new ArrayList<>();
+        for (int app = 0; app < appCount; app++) {
+            for (int uri = 0; uri < uriCount; uri++) {
+                long hits = 0;
+                if (unique && visitors[app] != null && visitors[app][uri] != null) {
+                    hits = visitors[app][uri].cardinality();
+                } else if (!unique && counts[app] != null) {
+                    hits = counts[app][uri];
+                }
+                if (hits > 0) {
+                    result.add(new ViewStats(apps.decode(app), uris.decode(uri), hits));
+                }
+            }
+        }
+        result.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return result;
+    }
+
+    public List<ViewTimeSeries> timeSeries(LocalDateTime start, LocalDateTime end, List<String> uriFilter,
+                                           RollupGranularity step, boolean unique) {
+        HitChunk[] snapshot = chunks.toArray(new HitChunk[0]);
+        int[] sizes = new int[snapshot.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            sizes[i] = snapshot[i].size();
+        }
+        boolean[] allowedUris = allowedUris(uriFilter, uris.size());
+        if (allowedUris == NO_URIS) {
+            return List.of();
+        }
+
+        LocalDateTime firstBucket = step.floor(start);
+        int bucketCount = (int) step.getUnit().between(firstBucket, step.floor(end)) + 1;
+        long base = firstBucket.toEpochSecond(ZoneOffset.UTC);
+        long stepSeconds = step.getUnit().getDuration().getSeconds();
+        long from = toEpochSecondCeil(start);
+        long to = end.toEpochSecond(ZoneOffset.UTC);
+        Map<Long, long[]> counts = new HashMap<>();
+        Map<Long, BitSet[]> visitors = new HashMap<>();
+        for (int i = 0; i < snapshot.length; i++) {
+            HitChunk chunk = snapshot[i];
+            int rows = sizes[i];
+            if (rows == 0 || chunk.maxTimestamp() < from || chunk.minTimestamp() > to) {
+                continue;
+            }
+            long[] timestamps = chunk.timestamps;
+            int[] appColumn = chunk.apps;
+            int[] uriColumn = chunk.uris;
+            int[] ipColumn = chunk.ips;
+            for (int row = 0; row < rows; row++) {
+                long timestamp = timestamps[row];
+                int uri = uriColumn[row];
+                if (timestamp < from || timestamp > to || allowedUris != null && !allowedUris[uri]) {
+                    continue;
+                }
+                long key = (long) appColumn[row] << Integer.SIZE | uri;
+                int bucket = (int) ((timestamp - base) / stepSeconds);
+                if (unique) {
+                    BitSet[] buckets = visitors.computeIfAbsent(key, k -> new BitSet[bucketCount]);
+                    if (buckets[bucket] == null) {
+                        buckets[bucket] = new BitSet();
+                    }
+                    buckets[bucket].set(ipColumn[row]);
+                } else {
+                    counts.computeIfAbsent(key, k -> new long[bucketCount])[bucket]++;
+                }
+            }
+        }
+        visitors.forEach((key, buckets) -> {
+            long[] series = new long[bucketCount];
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                series[bucket] = buckets[bucket] == null ? 0 : buckets[bucket].cardinality();
+            }
+            counts.put(key, series);
+        });
+
+        return counts.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<Long, long[]> entry) ->
+                        Arrays.stream(entry.getValue()).sum()).reversed())
+                .map(entry -> new ViewTimeSeries(apps.decode((int) (entry.getKey() >>> Integer.SIZE)),
+                        uris.decode(entry.getKey().intValue()), firstBucket, step.getStep(),
+                        Arrays.stream(entry.getValue()).boxed().toList()))
+                .toList();
+    }
+
+    private boolean[] allowedUris(List<String> uriFilter, int uriCount) {
+        if (uriFilter == null || uriFilter.isEmpty()) {
+            return null;
+        }
+        boolean[] allowedUris = new boolean[uriCount];
+        boolean any = false;
+        for (String uri : uriFilter) {
+            int id = uris.lookup(uri);
+            if (id >= 0 && id < uriCount) {
+                allowedUris[id] = true;
+                any = true;
+            }
+        }
+        return any ? allowedUris : NO_URIS;
+    }
+
+    private static long toEpochSecondCeil(LocalDateTime time) {
+        long seconds = time.toEpochSecond(ZoneOffset.UTC);
+        return time.getNano() > 0 ? seconds + 1 : seconds;
+    }
+}
@@ -7,7 +7,9 @@ import jakarta.validation.ConstraintViolationException;
 import lombok.Generated;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageConversionException;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -24,20 +26,21 @@ import java.util.stream.Collectors;
 @Generated
 public class ErrorHandler {
     @ExceptionHandler(MethodArgumentNotValidException.class)
-    public void handleMethodArgumentNotValidException(MethodArgumentNotValidException e) {
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleMethodArgumentNotValidException(MethodArgumentNotValidException e) {
         String message = e.getBindingResult().getAllErrors().stream()
                 .map(DefaultMessageSourceResolvable::getDefaultMessage)
                 .collect(Collectors.joining(", "));
-        throw new StatValidationException(message);
+        return handleBadRequest(new StatValidationException(message));
     }
 
     @ExceptionHandler(ConstraintViolationException.class)
-    public void handleConstraintViolationException(ConstraintViolationException e) {
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleConstraintViolationException(ConstraintViolationException e) {
         String message = e.getConstraintViolations().stream()
                 .map(ConstraintViolation::getMessage)
                 .collect(Collectors.joining(", "));
-
-        throw new StatValidationException(message);
+        return handleBadRequest(new StatValidationException(message));
     }
 
     @ExceptionHandler({InvalidFormatException.class,
@@ -48,8 +51,9 @@ public class ErrorHandler {
             MissingServletRequestParameterException.class,
             ValueInstantiationException.class
     })
-    public void handleIllegalArgumentException(Exception e) {
-        throw new StatValidationException(e.getMessage());
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleIllegalArgumentException(Exception e) {
+        return handleBadRequest(new StatValidationException(e.getMessage()));
     }
 
     @ExceptionHandler
@@ -59,6 +63,14 @@ public class ErrorHandler {
         return new ErrorResponse(e.getMessage());
     }
 
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handleIngestOverloaded(IngestOverloadedException e) {
+        log.warn("503 Ingest overloaded on Stat Service: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ErrorResponse(e.getMessage()));
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ErrorResponse handleException(final Exception e) {
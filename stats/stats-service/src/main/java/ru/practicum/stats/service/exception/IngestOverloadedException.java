@@ -0,0 +1,14 @@
+package ru.practicum.stats.service.exception;
+
+public class IngestOverloadedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public IngestOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
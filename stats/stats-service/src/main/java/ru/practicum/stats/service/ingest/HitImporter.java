@@ -0,0 +1,324 @@
+package ru.practicum.stats.service.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.service.HitListener;
+import ru.practicum.stats.service.HitListenerGate;
+import ru.practicum.stats.service.StatStorage;
+import ru.practicum.stats.service.exception.StatValidationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk import of an NDJSON file of {@link EndpointHitCreate}, enabled by {@code stat.import.file}.
+ * The file is cut into chunks of about {@code stat.import.chunk-size} bytes on line boundaries,
+ * and {@code stat.import.parallelism} workers parse, validate and insert the chunks in batches.
+ * Every batch is committed together with the offset it ends at in {@code hit_import_progress},
+ * so a rerun after a failure continues each chunk right after its last committed batch, and a
+ * batch that fails on a write conflict is retried. Invalid lines are logged and skipped. With
+ * {@code stat.import.exit} the application stops once the import is done.
+ */
+@Component
+@ConditionalOnProperty(name = "stat.import.file")
+@Slf4j
+public class HitImporter {
+    private static final int LOGGED_INVALID_LINES = 20;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final long RETRY_BACKOFF_MS = 50;
+
+    private final StatStorage statStorage;
+    private final List<HitListener> hitListeners;
+    private final HitListenerGate hitListenerGate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final ConfigurableApplicationContext context;
+    private final Path file;
+    private final long chunkSize;
+    private final int batchSize;
+    private final int parallelism;
+    private final int maxRetries;
+    private final long progressIntervalMs;
+    private final boolean exit;
+    private final AtomicLong importedHits = new AtomicLong();
+    private final AtomicLong invalidLines = new AtomicLong();
+    private final AtomicLong processedBytes = new AtomicLong();
+
+    public HitImporter(StatStorage statStorage,
+                       List<HitListener> hitListeners,
+                       HitListenerGate hitListenerGate,
+                       JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager,
+                       ObjectMapper objectMapper,
+                       Validator validator,
+                       ConfigurableApplicationContext context,
+                       @Value("${stat.import.file}") Path file,
+                       @Value("${stat.import.chunk-size:16777216}") long chunkSize,
+                       @Value("${stat.import.batch-size:5000}") int batchSize,
+                       @Value("${stat.import.parallelism:4}") int parallelism,
+                       @Value("${stat.import.max-retries:10}") int maxRetries,
+                       @Value("${stat.import.progress-interval-ms:5000}") long progressIntervalMs,
+                       @Value("${stat.import.exit:true}") boolean exit) {
+        this.statStorage = statStorage;
+        this.hitListeners = hitListeners;
+        this.hitListenerGate = hitListenerGate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.context = context;
+        this.file = file.toAbsolutePath().normalize();
+        this.chunkSize = chunkSize;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.maxRetries = maxRetries;
+        this.progressIntervalMs = progressIntervalMs;
+        this.exit = exit;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void importFile() throws IOException, InterruptedException {
+        List<ImportChunk> chunks = loadOrPlanChunks();
+        long total = chunks.stream().mapToLong(chunk -> chunk.end() - chunk.start()).sum();
+        long remaining = chunks.stream().mapToLong(chunk -> chunk.end() - chunk.committed()).sum();
+        log.info("STAT IMPORT: importing {} ({} bytes left of {}) in {} chunks with {} workers",
+                file, remaining, total, chunks.size(), parallelism);
+
+        long startedAt = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(() -> logProgress(total, total - remaining, startedAt),
+                progressIntervalMs, progressIntervalMs, TimeUnit.MILLISECONDS);
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (ImportChunk chunk : chunks) {
+                if (chunk.committed() < chunk.end()) {
+                    futures.add(workers.submit(() -> importChunk(chunk)));
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            workers.shutdownNow();
+            throw new IllegalStateException("Import of " + file + " failed, rerun to resume it", e.getCause());
+        } finally {
+            workers.shutdown();
+            reporter.shutdownNow();
+        }
+        logProgress(total, total - remaining, startedAt);
+        log.info("STAT IMPORT: finished {}", file);
+        if (exit) {
+            SpringApplication.exit(context);
+        }
+    }
+
+    private void importChunk(ImportChunk chunk) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            InputStream in = Channels.newInputStream(channel.position(chunk.committed()));
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            List<EndpointHitCreate> batch = new ArrayList<>(batchSize);
+            long position = chunk.committed();
+            long committed = position;
+            while (position < chunk.end()) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, chunk.end() - position));
+                if (read == -1) {
+                    break;
+                }
+                int lineStart = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != '\n') {
+                        continue;
+                    }
+                    line.write(buffer, lineStart, i - lineStart);
+                    lineStart = i + 1;
+                    parseLine(line, position + lineStart, batch);
+                    line.reset();
+                    if (batch.size() >= batchSize) {
+                        commit(chunk, batch, position + lineStart, committed);
+                        committed = position + lineStart;
+                    }
+                }
+                line.write(buffer, lineStart, read - lineStart);
+                position += read;
+            }
+            parseLine(line, position, batch);
+            commit(chunk, batch, position, committed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read chunk at " + chunk.start() + " of " + file, e);
+        }
+    }
+
+    private void parseLine(ByteArrayOutputStream line, long endOffset, List<EndpointHitCreate> batch) {
+        if (line.size() == 0 || line.toString().isBlank()) {
+            return;
+        }
+        try {
+            EndpointHitCreate hit = objectMapper.readValue(line.toByteArray(), EndpointHitCreate.class);
+            validate(hit);
+            batch.add(hit);
+        } catch (IOException | StatValidationException e) {
+            if (invalidLines.incrementAndGet() <= LOGGED_INVALID_LINES) {
+                log.warn("STAT IMPORT: skipping invalid line ending at byte {}: {}", endOffset, e.getMessage());
+            }
+        }
+    }
+
+    private void validate(EndpointHitCreate hit) {
+        Set<ConstraintViolation<EndpointHitCreate>> violations = validator.validate(hit);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<EndpointHitCreate> violation = violations.iterator().next();
+            throw new StatValidationException(violation.getPropertyPath() + " " + violation.getMessage());
+        }
+        if (hit.getTimestamp() == null) {
+            throw new StatValidationException("timestamp must not be null");
+        }
+    }
+
+    private void commit(ImportChunk chunk, List<EndpointHitCreate> batch, long offset, long previousOffset) {
+        if (offset == previousOffset) {
+            return;
+        }
+        List<EndpointHitCreate> hits = List.copyOf(batch);
+        hitListenerGate.write(() -> store(chunk, hits, offset));
+        importedHits.addAndGet(hits.size());
+        processedBytes.addAndGet(offset - previousOffset);
+        batch.clear();
+    }
+
+    private void store(ImportChunk chunk, List<EndpointHitCreate> hits, long offset) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (!hits.isEmpty()) {
+                        statStorage.saveAll(hits);
+                    }
+                    jdbcTemplate.update("UPDATE hit_import_progress SET committed_offset = ? "
+                            + "WHERE file_name = ? AND chunk_start = ?", offset, file.toString(), chunk.start());
+                });
+                break;
+            } catch (DataAccessException e) {
+                // the batch and its offset roll back together, so a batch that lost a lock race
+                // with another worker can simply be written again
+                if (attempt > maxRetries) {
+                    throw e;
+                }
+                log.debug("STAT IMPORT: retrying batch ending at byte {} after: {}", offset, e.getMessage());
+                backOff(attempt);
+            }
+        }
+        if (!hits.isEmpty()) {
+            hitListeners.forEach(listener -> listener.onHits(hits));
+        }
+    }
+
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MS << Math.min(attempt - 1, 6));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import interrupted", e);
+        }
+    }
+
+    /**
+     * Returns the chunks recorded by an earlier run of the same file, or cuts the file into new
+     * chunks that end right after a line break and records them.
+     */
+    private List<ImportChunk> loadOrPlanChunks() throws IOException {
+        List<ImportChunk> chunks = jdbcTemplate.query(
+                "SELECT chunk_start, chunk_end, committed_offset FROM hit_import_progress "
+                        + "WHERE file_name = ? ORDER BY chunk_start",
+                (rs, rowNum) -> new ImportChunk(rs.getLong("chunk_start"), rs.getLong("chunk_end"),
+                        rs.getLong("committed_offset")),
+                file.toString());
+        if (!chunks.isEmpty()) {
+            log.info("STAT IMPORT: resuming {} from its committed offsets", file);
+            return chunks;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                long end = lineEndAfter(channel, Math.min(start + chunkSize, size) - 1, size);
+                chunks.add(new ImportChunk(start, end, start));
+                start = end;
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO hit_import_progress (file_name, chunk_start, chunk_end, "
+                + "committed_offset) VALUES (?, ?, ?, ?)", chunks, chunks.size(), (ps, chunk) -> {
+                    ps.setString(1, file.toString());
+                    ps.setLong(2, chunk.start());
+                    ps.setLong(3, chunk.end());
+                    ps.setLong(4, chunk.committed());
+                });
+        return chunks;
+    }
+
+    /**
+     * Returns the offset right after the first line break at or after the position.
+     */
+    private static long lineEndAfter(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+        long offset = position;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    private void logProgress(long total, long resumedBytes, long startedAt) {
+        double seconds = Math.max((System.nanoTime() - startedAt) / 1e9, 0.001);
+        long bytes = processedBytes.get();
+        log.info("STAT IMPORT: {} hits imported, {} invalid lines skipped, {}% of {} bytes, {} hits/s, {} MB/s",
+                importedHits.get(), invalidLines.get(), total == 0 ? 100 : (resumedBytes + bytes) * 100 / total, total,
+                Math.round(importedHits.get() / seconds), String.format("%.1f", bytes / seconds / (1 << 20)));
+    }
+
+    private record ImportChunk(long start, long end, long committed) {
+    }
+}
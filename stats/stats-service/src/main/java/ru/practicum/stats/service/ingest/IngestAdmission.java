@@ -0,0 +1,96 @@
+package ru.practicum.stats.service.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.service.exception.IngestOverloadedException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for hit writes. At most {@code max-in-flight} writes hold database
+ * connections at a time, by default as many as fit into the connection pool minus the connections
+ * reserved for reads, so /stats keeps working during a write storm. A write can hold two
+ * connections: its own and the one of a REQUIRES_NEW transaction that creates dictionary entries
+ * or partitions. Up to {@code max-queued} writes wait for a slot for at most {@code max-wait-ms};
+ * anything beyond that is rejected with a retry hint. A waiting write parks a request thread, so
+ * by default only as many writes queue as leave {@code reserved-read-threads} of the Tomcat
+ * threads free for reads.
+ */
+@Component
+@Slf4j
+public class IngestAdmission {
+    private static final int CONNECTIONS_PER_WRITE = 2;
+
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final long maxWaitMs;
+    private final long retryAfterSeconds;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    public IngestAdmission(MeterRegistry meterRegistry,
+                           @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                           @Value("${stat.ingest.reserved-read-connections:2}") int reservedReadConnections,
+                           @Value("${stat.ingest.max-in-flight:0}") int maxInFlight,
+                           @Value("${server.tomcat.threads.max:200}") int requestThreads,
+                           @Value("${stat.ingest.reserved-read-threads:50}") int reservedReadThreads,
+                           @Value("${stat.ingest.max-queued:-1}") int maxQueued,
+                           @Value("${stat.ingest.max-wait-ms:2000}") long maxWaitMs,
+                           @Value("${stat.ingest.retry-after-seconds:1}") long retryAfterSeconds) {
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight
+                : Math.max(1, (poolSize - reservedReadConnections) / CONNECTIONS_PER_WRITE);
+        this.permits = new Semaphore(this.maxInFlight, true);
+        this.maxQueued = maxQueued >= 0 ? maxQueued
+                : Math.max(0, requestThreads - reservedReadThreads - this.maxInFlight);
+        this.maxWaitMs = maxWaitMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.rejectedQueueFull = meterRegistry.counter("stat.ingest.rejected", "reason", "queue-full");
+        this.rejectedTimeout = meterRegistry.counter("stat.ingest.rejected", "reason", "timeout");
+        Gauge.builder("stat.ingest.in-flight", this, IngestAdmission::inFlight).register(meterRegistry);
+        Gauge.builder("stat.ingest.queued", queued, AtomicInteger::get).register(meterRegistry);
+        log.info("STAT INGEST: admitting {} concurrent writes, {} queued", this.maxInFlight, this.maxQueued);
+    }
+
+    public void admit(Runnable write) {
+        acquire();
+        try {
+            write.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void acquire() {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejectedQueueFull.increment();
+            throw new IngestOverloadedException("Ingest queue is full", retryAfterSeconds);
+        }
+        try {
+            if (!permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                rejectedTimeout.increment();
+                throw new IngestOverloadedException("Timed out waiting for an ingest slot", retryAfterSeconds);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IngestOverloadedException("Interrupted while waiting for an ingest slot", retryAfterSeconds);
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private int inFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+}
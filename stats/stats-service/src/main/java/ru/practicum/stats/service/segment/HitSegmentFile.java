@@ -0,0 +1,319 @@
+package ru.practicum.stats.service.segment;
+
+import ru.practicum.stats.service.EncodedHit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An immutable file with the hits of one sealed day, read through a memory mapping.
+ *
+ * <p>Layout: a header with the magic, version, codec, the highest sealed row id, the min/max
+ * timestamps and the row count; the ranges of the sealed row ids as varint gaps and lengths; the
+ * app, uri and ip dictionaries; then four columns, each as
+ * [int raw length][int stored length][bytes]. Rows are sorted by time. The time column holds
+ * varint deltas of epoch seconds plus varint nanos, the other columns hold varint dictionary
+ * codes. With the deflate codec the columns are inflated on open, otherwise they are read
+ * straight from the mapping.
+ */
+public final class HitSegmentFile {
+    private static final int MAGIC = 0x48534547;
+    private static final byte VERSION = 2;
+
+    private final Path path;
+    private final long maxRowId;
+    private final List<RowIdRange> rowIds;
+    private final LocalDateTime minCreated;
+    private final LocalDateTime maxCreated;
+    private final int rowCount;
+    private final int[] appIds;
+    private final int[] uriIds;
+    private final byte[][] ips;
+    private final ByteBuffer[] columns;
+
+    private HitSegmentFile(Path path, long maxRowId, List<RowIdRange> rowIds, LocalDateTime minCreated,
+                           LocalDateTime maxCreated, int rowCount, int[] appIds, int[] uriIds, byte[][] ips,
+                           ByteBuffer[] columns) {
+        this.path = path;
+        this.maxRowId = maxRowId;
+        this.rowIds = rowIds;
+        this.minCreated = minCreated;
+        this.maxCreated = maxCreated;
+        this.rowCount = rowCount;
+        this.appIds = appIds;
+        this.uriIds = uriIds;
+        this.ips = ips;
+        this.columns = columns;
+    }
+
+    /**
+     * Writes the hits, which must be sorted by time, through a temporary file and an atomic move.
+     * {@code rowIds} are the sorted, disjoint ranges of the table row ids the hits were read from.
+     */
+    public static void write(Path path, List<EncodedHit> hits, List<RowIdRange> rowIds, SegmentCodec codec)
+            throws IOException {
+        long maxRowId = rowIds.isEmpty() ? 0 : rowIds.getLast().last();
+        Map<Integer, Integer> appCodes = new HashMap<>();
+        Map<Integer, Integer> uriCodes = new HashMap<>();
+        Map<ByteBuffer, Integer> ipCodes = new HashMap<>();
+        ByteArrayOutputStream time = new ByteArrayOutputStream();
+        ByteArrayOutputStream apps = new ByteArrayOutputStream();
+        ByteArrayOutputStream uris = new ByteArrayOutputStream();
+        ByteArrayOutputStream ipColumn = new ByteArrayOutputStream();
+        long previousSecond = hits.isEmpty() ? 0 : hits.get(0).created().toEpochSecond(ZoneOffset.UTC);
+        for (EncodedHit hit : hits) {
+            long second = hit.created().toEpochSecond(ZoneOffset.UTC);
+            putVarint(time, second - previousSecond);
+            putVarint(time, hit.created().getNano());
+            previousSecond = second;
+            putVarint(apps, appCodes.computeIfAbsent(hit.appId(), id -> appCodes.size()));
+            putVarint(uris, uriCodes.computeIfAbsent(hit.uriId(), id -> uriCodes.size()));
+            putVarint(ipColumn, ipCodes.computeIfAbsent(ByteBuffer.wrap(hit.ip()), ip -> ipCodes.size()));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + 2 + Long.BYTES * 3 + Integer.BYTES * 3);
+        header.putInt(MAGIC).put(VERSION).put((byte) codec.ordinal()).putLong(maxRowId);
+        putTimestamp(header, hits.isEmpty() ? LocalDateTime.MIN : hits.get(0).created());
+        putTimestamp(header, hits.isEmpty() ? LocalDateTime.MIN : hits.get(hits.size() - 1).created());
+        header.putInt(hits.size());
+        out.write(header.array(), 0, header.position());
+        putVarint(out, rowIds.size());
+        long previousLast = 0;
+        for (RowIdRange range : rowIds) {
+            putVarint(out, range.first() - previousLast);
+            putVarint(out, range.last() - range.first());
+            previousLast = range.last();
+        }
+        putDictionary(out, appCodes);
+        putDictionary(out, uriCodes);
+        byte[][] ipValues = new byte[ipCodes.size()][];
+        ipCodes.forEach((ip, code) -> ipValues[code] = ip.array());
+        putVarint(out, ipValues.length);
+        for (byte[] ip : ipValues) {
+            out.write(ip.length);
+            out.write(ip, 0, ip.length);
+        }
+        for (ByteArrayOutputStream column : List.of(time, apps, uris, ipColumn)) {
+            byte[] raw = column.toByteArray();
+            byte[] stored = codec == SegmentCodec.DEFLATE ? deflate(raw) : raw;
+            out.write(ByteBuffer.allocate(Integer.BYTES * 2).putInt(raw.length).putInt(stored.length).array(), 0,
+                    Integer.BYTES * 2);
+            out.write(stored, 0, stored.length);
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = ByteBuffer.wrap(out.toByteArray());
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static HitSegmentFile open(Path path) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.getInt() != MAGIC) {
+            throw new IOException("Not a hit segment file: " + path);
+        }
+        byte version = data.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + " of hit segment file " + path);
+        }
+        SegmentCodec codec = SegmentCodec.values()[data.get()];
+        long maxRowId = data.getLong();
+        LocalDateTime minCreated = getTimestamp(data);
+        LocalDateTime maxCreated = getTimestamp(data);
+        int rowCount = data.getInt();
+        List<RowIdRange> rowIds = new ArrayList<>();
+        long previousLast = 0;
+        for (long i = getVarint(data); i > 0; i--) {
+            long first = previousLast + getVarint(data);
+            previousLast = first + getVarint(data);
+            rowIds.add(new RowIdRange(first, previousLast));
+        }
+        int[] appIds = getDictionary(data);
+        int[] uriIds = getDictionary(data);
+        byte[][] ips = new byte[(int) getVarint(data)][];
+        for (int i = 0; i < ips.length; i++) {
+            ips[i] = new byte[Byte.toUnsignedInt(data.get())];
+            data.get(ips[i]);
+        }
+        ByteBuffer[] columns = new ByteBuffer[4];
+        for (int i = 0; i < columns.length; i++) {
+            int rawLength = data.getInt();
+            int storedLength = data.getInt();
+            ByteBuffer stored = data.slice(data.position(), storedLength);
+            data.position(data.position() + storedLength);
+            columns[i] = codec == SegmentCodec.DEFLATE ? inflate(stored, rawLength) : stored;
+        }
+        return new HitSegmentFile(path, maxRowId, List.copyOf(rowIds), minCreated, maxCreated, rowCount, appIds,
+                uriIds, ips, columns);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long maxRowId() {
+        return maxRowId;
+    }
+
+    public List<RowIdRange> rowIds() {
+        return rowIds;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public boolean overlaps(LocalDateTime from, LocalDateTime to) {
+        return rowCount > 0 && !minCreated.isAfter(to) && !maxCreated.isBefore(from);
+    }
+
+    public void forEach(Consumer<EncodedHit> consumer) {
+        scan(minCreated, maxCreated, true, null, consumer);
+    }
+
+    /**
+     * Calls the consumer for the hits in [from, to] or [from, to) whose uri id is in the filter;
+     * a null filter matches every uri.
+     */
+    public void scan(LocalDateTime from, LocalDateTime to, boolean toInclusive, Collection<Integer> uriFilter,
+                     Consumer<EncodedHit> consumer) {
+        if (!overlaps(from, to)) {
+            return;
+        }
+        boolean[] allowedUris = new boolean[uriIds.length];
+        boolean anyAllowed = false;
+        for (int code = 0; code < uriIds.length; code++) {
+            allowedUris[code] = uriFilter == null || uriFilter.contains(uriIds[code]);
+            anyAllowed |= allowedUris[code];
+        }
+        if (!anyAllowed) {
+            return;
+        }
+
+        ByteBuffer time = columns[0].duplicate();
+        ByteBuffer apps = columns[1].duplicate();
+        ByteBuffer uris = columns[2].duplicate();
+        ByteBuffer ipColumn = columns[3].duplicate();
+        long second = minCreated.toEpochSecond(ZoneOffset.UTC);
+        for (int row = 0; row < rowCount; row++) {
+            second += getVarint(time);
+            LocalDateTime created = LocalDateTime.ofEpochSecond(second, (int) getVarint(time), ZoneOffset.UTC);
+            int app = (int) getVarint(apps);
+            int uri = (int) getVarint(uris);
+            int ip = (int) getVarint(ipColumn);
+            if (created.isBefore(from)) {
+                continue;
+            }
+            if (toInclusive ? created.isAfter(to) : !created.isBefore(to)) {
+                return;
+            }
+            if (allowedUris[uri]) {
+                consumer.accept(new EncodedHit(appIds[app], uriIds[uri], ips[ip], created));
+            }
+        }
+    }
+
+    private static void putDictionary(ByteArrayOutputStream out, Map<Integer, Integer> codes) {
+        int[] values = new int[codes.size()];
+        codes.forEach((id, code) -> values[code] = id);
+        putVarint(out, values.length);
+        for (int value : values) {
+            putVarint(out, value);
+        }
+    }
+
+    private static int[] getDictionary(ByteBuffer data) {
+        int[] values = new int[(int) getVarint(data)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (int) getVarint(data);
+        }
+        return values;
+    }
+
+    private static void putTimestamp(ByteBuffer buffer, LocalDateTime timestamp) {
+        buffer.putLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(timestamp.getNano());
+    }
+
+    private static LocalDateTime getTimestamp(ByteBuffer buffer) {
+        return LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+    }
+
+    private static void putVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static ByteBuffer inflate(ByteBuffer stored, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            ByteBuffer raw = ByteBuffer.allocate(rawLength);
+            while (raw.hasRemaining() && !inflater.finished()) {
+                inflater.inflate(raw);
+            }
+            return raw.flip();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted hit segment column", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
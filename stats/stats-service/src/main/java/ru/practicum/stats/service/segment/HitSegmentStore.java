@@ -0,0 +1,218 @@
+package ru.practicum.stats.service.segment;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.service.EncodedHit;
+import ru.practicum.stats.service.HitPartitions;
+import ru.practicum.stats.service.LockWaits;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Seals the daily hit partitions that are older than {@code stat.segments.seal-after-days} into
+ * immutable {@link HitSegmentFile}s and serves raw reads from them. Sealed rows are deleted from
+ * the day table; hits that arrive later for a sealed day land in the table again and are merged
+ * into the file on the next run. A file records the ranges of the row ids it holds, and only those
+ * rows are deleted, so a row that commits late with a lower id stays for the next run, and rows
+ * left in the table by a crash between writing the file and deleting them are cleaned up on
+ * startup. The rows of a day are deleted and its file is published under a write lock, and reads
+ * that combine the tables with the files run under the read lock, so they see each hit once.
+ */
+@Component
+@ConditionalOnProperty(name = "stat.segments.enabled", havingValue = "true")
+@Slf4j
+public class HitSegmentStore {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final DateTimeFormatter FILE_NAME = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HitPartitions hitPartitions;
+    private final Path directory;
+    private final int sealAfterDays;
+    private final SegmentCodec codec;
+    private final NavigableMap<LocalDate, HitSegmentFile> files = new ConcurrentSkipListMap<>();
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final long swapLockTimeoutMs;
+    private final TransactionTemplate newTransaction;
+
+    public HitSegmentStore(JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           HitPartitions hitPartitions,
+                           @Value("${stat.segments.dir:stats-segments}") Path directory,
+                           @Value("${stat.segments.seal-after-days:7}") int sealAfterDays,
+                           @Value("${stat.segments.codec:NONE}") SegmentCodec codec,
+                           @Value("${stat.stream.timeout-ms:30000}") long swapLockTimeoutMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.swapLockTimeoutMs = swapLockTimeoutMs;
+        this.hitPartitions = hitPartitions;
+        this.directory = directory;
+        this.sealAfterDays = sealAfterDays;
+        this.codec = codec;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : paths.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                String name = path.getFileName().toString();
+                LocalDate day = LocalDate.parse(name.substring(0, name.length() - SEGMENT_SUFFIX.length()), FILE_NAME);
+                HitSegmentFile file = HitSegmentFile.open(path);
+                deleteSealedRows(day, file.rowIds());
+                files.put(day, file);
+            }
+        }
+        log.info("STAT SEGMENTS: loaded {} sealed days from {}", files.size(), directory);
+    }
+
+    @Scheduled(initialDelayString = "${stat.segments.interval-ms:3600000}",
+            fixedDelayString = "${stat.segments.interval-ms:3600000}")
+    public void sealClosedDays() {
+        for (LocalDate day : hitPartitions.daysBefore(LocalDate.now().minusDays(sealAfterDays))) {
+            try {
+                seal(day);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to seal hits of " + day, e);
+            }
+        }
+    }
+
+    /**
+     * Runs a query that reads both the day tables and the sealed files, so that it does not see a
+     * day between the deletion of its sealed rows and the publication of its file.
+     */
+    public <T> T read(Supplier<T> query) {
+        swapLock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    public boolean overlaps(LocalDateTime from, LocalDateTime to) {
+        return inRange(from, to).stream().anyMatch(file -> file.overlaps(from, to));
+    }
+
+    public void scan(LocalDateTime from, LocalDateTime to, boolean toInclusive, Collection<Integer> uriIds,
+                     Consumer<EncodedHit> consumer) {
+        inRange(from, to).forEach(file -> file.scan(from, to, toInclusive, uriIds, consumer));
+    }
+
+    public boolean isEmpty() {
+        return files.isEmpty();
+    }
+
+    public void forEach(Consumer<EncodedHit> consumer) {
+        files.values().forEach(file -> file.forEach(consumer));
+    }
+
+    public synchronized void deleteBefore(LocalDate day) throws IOException {
+        List<HitSegmentFile> deleted;
+        if (!LockWaits.tryLock(swapLock.writeLock(), swapLockTimeoutMs)) {
+            log.warn("STAT SEGMENTS: reads kept the files busy, deleting days before {} on the next run", day);
+            return;
+        }
+        try {
+            deleted = List.copyOf(files.headMap(day, false).values());
+            files.headMap(day, false).clear();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        for (HitSegmentFile file : deleted) {
+            Files.deleteIfExists(file.path());
+            log.info("STAT SEGMENTS: deleted {}", file.path());
+        }
+    }
+
+    private synchronized void seal(LocalDate day) throws IOException {
+        String table = hitPartitions.existingTable(day);
+        if (table == null) {
+            return;
+        }
+        List<EncodedHit> hits = new ArrayList<>();
+        List<RowIdRange> readRowIds = new ArrayList<>();
+        jdbcTemplate.query("SELECT id, app_id, uri_id, ip, created FROM " + table + " ORDER BY id", rs -> {
+            hits.add(new EncodedHit(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getBytes("ip"),
+                    rs.getObject("created", LocalDateTime.class)));
+            addRowId(readRowIds, rs.getLong("id"));
+        });
+        if (hits.isEmpty()) {
+            return;
+        }
+        List<RowIdRange> rowIds = new ArrayList<>(readRowIds);
+        HitSegmentFile previous = files.get(day);
+        if (previous != null) {
+            previous.forEach(hits::add);
+            rowIds.addAll(previous.rowIds());
+            rowIds.sort(Comparator.comparingLong(RowIdRange::first));
+        }
+        hits.sort(Comparator.comparing(EncodedHit::created));
+
+        Path path = directory.resolve(day.format(FILE_NAME) + SEGMENT_SUFFIX);
+        HitSegmentFile.write(path, hits, rowIds, codec);
+        HitSegmentFile file = HitSegmentFile.open(path);
+        if (!LockWaits.tryLock(swapLock.writeLock(), swapLockTimeoutMs)) {
+            // the new file also holds the rows still in the table, the next run writes it again
+            log.warn("STAT SEGMENTS: reads kept the files busy, publishing {} on the next run", day);
+            return;
+        }
+        try {
+            deleteSealedRows(day, readRowIds);
+            files.put(day, file);
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        log.info("STAT SEGMENTS: sealed {} hits of {} into {}", hits.size(), day, path);
+    }
+
+    /**
+     * Deletes exactly the rows with the given ids, rows that were not read when the file was
+     * written stay in the table.
+     */
+    private void deleteSealedRows(LocalDate day, List<RowIdRange> rowIds) {
+        String table = hitPartitions.existingTable(day);
+        if (table != null) {
+            newTransaction.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                    "DELETE FROM " + table + " WHERE id BETWEEN ? AND ?",
+                    rowIds.stream().map(range -> new Object[]{range.first(), range.last()}).toList()));
+        }
+    }
+
+    private static void addRowId(List<RowIdRange> ranges, long id) {
+        if (!ranges.isEmpty() && ranges.getLast().last() + 1 == id) {
+            ranges.set(ranges.size() - 1, new RowIdRange(ranges.getLast().first(), id));
+        } else {
+            ranges.add(new RowIdRange(id, id));
+        }
+    }
+
+    private Collection<HitSegmentFile> inRange(LocalDateTime from, LocalDateTime to) {
+        return files.subMap(from.toLocalDate(), true, to.toLocalDate(), true).values();
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.stats.service.segment;
+
+/**
+ * An inclusive range of hit table row ids.
+ */
+public record RowIdRange(long first, long last) {
+}
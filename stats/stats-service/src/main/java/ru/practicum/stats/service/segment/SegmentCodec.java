@@ -0,0 +1,6 @@
+package ru.practicum.stats.service.segment;
+
+public enum SegmentCodec {
+    NONE,
+    DEFLATE
+}
@@ -0,0 +1,173 @@
+package ru.practicum.stats.service.sketch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compressed bitmap of non-negative int ids in the spirit of Roaring: ids are split by their high
+ * 16 bits into containers, and a container holds its low 16 bits as a sorted array while it has
+ * at most {@value #ARRAY_LIMIT} values, or as a 65536-bit bitset once it is denser. Unions are
+ * exact, so the cardinality of an OR over per-day bitmaps is an exact distinct count.
+ */
+public final class IdBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITSET_WORDS = 1024;
+    private static final byte ARRAY = 1;
+    private static final byte BITSET = 2;
+
+    private final TreeMap<Integer, Container> containers = new TreeMap<>();
+
+    public void add(int id) {
+        containers.computeIfAbsent(id >>> 16, key -> new Container()).add((char) id);
+    }
+
+    public void or(IdBitmap other) {
+        other.containers.forEach((key, container) -> {
+            Container own = containers.get(key);
+            if (own == null) {
+                containers.put(key, container.copy());
+            } else {
+                own.or(container);
+            }
+        });
+    }
+
+    public long cardinality() {
+        long cardinality = 0;
+        for (Container container : containers.values()) {
+            cardinality += container.cardinality;
+        }
+        return cardinality;
+    }
+
+    public byte[] toBytes() {
+        int size = Integer.BYTES;
+        for (Container container : containers.values()) {
+            size += Character.BYTES + 1 + (container.bitset != null
+                    ? BITSET_WORDS * Long.BYTES
+                    : Character.BYTES + container.cardinality * Character.BYTES);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).putInt(containers.size());
+        for (Map.Entry<Integer, Container> entry : containers.entrySet()) {
+            Container container = entry.getValue();
+            buffer.putChar((char) entry.getKey().intValue());
+            if (container.bitset != null) {
+                buffer.put(BITSET);
+                for (long word : container.bitset) {
+                    buffer.putLong(word);
+                }
+            } else {
+                // a full array container is converted to a bitset, so the count fits in a char
+                buffer.put(ARRAY).putChar((char) container.cardinality);
+                for (int i = 0; i < container.cardinality; i++) {
+                    buffer.putChar(container.values[i]);
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    public static IdBitmap fromBytes(byte[] bytes) {
+        IdBitmap bitmap = new IdBitmap();
+        if (bytes == null || bytes.length == 0) {
+            return bitmap;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            int key = buffer.getChar();
+            byte type = buffer.get();
+            Container container = new Container();
+            if (type == BITSET) {
+                container.bitset = new long[BITSET_WORDS];
+                for (int word = 0; word < BITSET_WORDS; word++) {
+                    container.bitset[word] = buffer.getLong();
+                    container.cardinality += Long.bitCount(container.bitset[word]);
+                }
+                container.values = null;
+            } else if (type == ARRAY) {
+                container.cardinality = buffer.getChar();
+                container.values = new char[Math.max(container.cardinality, 4)];
+                for (int value = 0; value < container.cardinality; value++) {
+                    container.values[value] = buffer.getChar();
+                }
+            } else {
+                throw new IllegalStateException("Unknown bitmap container type: " + type);
+            }
+            bitmap.containers.put(key, container);
+        }
+        return bitmap;
+    }
+
+    private static final class Container {
+        private char[] values = new char[4];
+        private long[] bitset;
+        private int cardinality;
+
+        private void add(char value) {
+            if (bitset != null) {
+                addToBitset(value);
+                return;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                toBitset();
+                addToBitset(value);
+                return;
+            }
+            int insertAt = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(values.length * 2, ARRAY_LIMIT));
+            }
+            System.arraycopy(values, insertAt, values, insertAt + 1, cardinality - insertAt);
+            values[insertAt] = value;
+            cardinality++;
+        }
+
+        private void or(Container other) {
+            if (other.bitset == null) {
+                for (int i = 0; i < other.cardinality; i++) {
+                    add(other.values[i]);
+                }
+                return;
+            }
+            if (bitset == null) {
+                toBitset();
+            }
+            cardinality = 0;
+            for (int word = 0; word < BITSET_WORDS; word++) {
+                bitset[word] |= other.bitset[word];
+                cardinality += Long.bitCount(bitset[word]);
+            }
+        }
+
+        private Container copy() {
+            Container copy = new Container();
+            copy.values = values == null ? null : values.clone();
+            copy.bitset = bitset == null ? null : bitset.clone();
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        private void toBitset() {
+            bitset = new long[BITSET_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bitset[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+
+        private void addToBitset(char value) {
+            long bit = 1L << value;
+            if ((bitset[value >>> 6] & bit) == 0) {
+                bitset[value >>> 6] |= bit;
+                cardinality++;
+            }
+        }
+    }
+}
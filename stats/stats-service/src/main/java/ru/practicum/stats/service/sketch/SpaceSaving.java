@@ -0,0 +1,92 @@
+package ru.practicum.stats.service.sketch;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Space-Saving heavy-hitter sketch. At most {@code capacity} keys are tracked; an untracked key
+ * replaces the key with the smallest count and inherits that count as its error. Every key whose
+ * true weight exceeds {@code total / capacity} is guaranteed to be tracked, and each estimate
+ * overcounts by at most its error.
+ */
+public final class SpaceSaving<K> {
+    private final int capacity;
+    private final Map<K, Counter> counters = new HashMap<>();
+    private final TreeMap<Long, Set<K>> keysByCount = new TreeMap<>();
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public void offer(K key, long weight) {
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            unlink(key, counter.count);
+        } else if (counters.size() < capacity) {
+            counter = new Counter(0);
+            counters.put(key, counter);
+        } else {
+            Map.Entry<Long, Set<K>> smallest = keysByCount.firstEntry();
+            K evicted = smallest.getValue().iterator().next();
+            unlink(evicted, smallest.getKey());
+            counters.remove(evicted);
+            counter = new Counter(smallest.getKey());
+            counters.put(key, counter);
+        }
+        counter.count += weight;
+        keysByCount.computeIfAbsent(counter.count, count -> new LinkedHashSet<>()).add(key);
+        total += weight;
+    }
+
+    public Map<K, Estimate> estimates() {
+        Map<K, Estimate> estimates = new HashMap<>(counters.size() * 2);
+        counters.forEach((key, counter) -> estimates.put(key, new Estimate(counter.count, counter.error)));
+        return estimates;
+    }
+
+    /**
+     * Upper bound of the weight of any key that is not tracked.
+     */
+    public long untrackedBound() {
+        return counters.size() < capacity ? 0 : keysByCount.firstKey();
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    private void unlink(K key, long count) {
+        Set<K> keys = keysByCount.get(count);
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            keysByCount.remove(count);
+        }
+    }
+
+    public record Estimate(long count, long error) {
+        public long lowerBound() {
+            return count - error;
+        }
+    }
+
+    private static final class Counter {
+        private final long error;
+        private long count;
+
+        Counter(long error) {
+            this.error = error;
+            this.count = error;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package ru.practicum.stats.service.top;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.service.HitJdbcRepository;
+import ru.practicum.stats.service.HitListener;
+import ru.practicum.stats.service.HitListenerGate;
+import ru.practicum.stats.service.RollupGranularity;
+import ru.practicum.stats.service.ViewKey;
+import ru.practicum.stats.service.sketch.SpaceSaving;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keeps a Space-Saving sketch of (app, uri) hit counts per hour for the last
+ * {@code stat.top.retention-hours} hours and uses them to pick top-N candidates for a window.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TopHitsTracker implements HitListener {
+    private final HitJdbcRepository hitJdbcRepository;
+    private final HitListenerGate hitListenerGate;
+    private final ConcurrentSkipListMap<LocalDateTime, SpaceSaving<ViewKey>> hourSketches =
+            new ConcurrentSkipListMap<>();
+    @Value("${stat.top.capacity:1000}")
+    private int capacity;
+    @Value("${stat.top.retention-hours:168}")
+    private int retentionHours;
+    private volatile LocalDateTime coveredFrom;
+    private volatile boolean warmedUp;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        LocalDateTime latest = hitJdbcRepository.findLatestRollupBucket(RollupGranularity.HOUR);
+        LocalDateTime currentHour = RollupGranularity.HOUR.floor(LocalDateTime.now());
+        LocalDateTime from = latest == null ? LocalDateTime.MIN
+                : (latest.isAfter(currentHour) ? currentHour : latest).minusHours(retentionHours - 1L);
+        hitListenerGate.read(started -> {
+            // onHits starts offering hits from here on, the hourly rollups cover the ones stored before
+            coveredFrom = from;
+            if (latest == null) {
+                return;
+            }
+            hitJdbcRepository.forEachRollup(RollupGranularity.HOUR, from, (bucket, stats) -> {
+                started.run();
+                if (!bucket.isAfter(currentHour) && !bucket.isBefore(coveredFrom)) {
+                    offer(bucket, new ViewKey(stats.getApp(), stats.getUri()), stats.getHits());
+                }
+            });
+        });
+        warmedUp = true;
+        log.info("STAT TOP: loaded {} hourly sketches starting from {}", hourSketches.size(), from);
+    }
+
+    @Override
+    public void onHits(List<EndpointHitCreate> hits) {
+        if (coveredFrom == null) {
+            // persisted before the warm-up, which reads them back from the rollups
+            return;
+        }
+        // timestamps come from the clients, one far in the future would otherwise evict every sketch
+        LocalDateTime latestAccepted = LocalDateTime.now().plusMinutes(1);
+        LocalDateTime earliestAccepted = RollupGranularity.HOUR.floor(latestAccepted).minusHours(retentionHours - 1L);
+        LocalDateTime latest = null;
+        for (EndpointHitCreate hit : hits) {
+            LocalDateTime hour = RollupGranularity.HOUR.floor(hit.getTimestamp());
+            if (hour.isBefore(coveredFrom) || hour.isBefore(earliestAccepted)
+                    || hit.getTimestamp().isAfter(latestAccepted)) {
+                continue;
+            }
+            offer(hour, new ViewKey(hit.getApp(), hit.getUri()), 1);
+            if (latest == null || hour.isAfter(latest)) {
+                latest = hour;
+            }
+        }
+        if (latest != null) {
+            evictBefore(latest.minusHours(retentionHours - 1L));
+        }
+    }
+
+    /**
+     * Returns the uris of every tracked (app, uri) that may be among the top {@code n} by hits in
+     * the window, or null when the retained sketches cannot tell: the window starts before them, or
+     * a key they no longer track could still make it into the top.
+     */
+    public List<String> findCandidateUris(LocalDateTime start, LocalDateTime end, int n) {
+        Bounds bounds = bounds(start, end);
+        if (bounds == null) {
+            return null;
+        }
+        List<Long> lowerBounds = new ArrayList<>(bounds.keys().values().stream().map(bound -> bound[0]).toList());
+        lowerBounds.sort(Comparator.reverseOrder());
+        long threshold = lowerBounds.size() < n ? 0 : lowerBounds.get(n - 1);
+        return bounds.urisReaching(threshold);
+    }
+
+    /**
+     * Returns the uris of every tracked (app, uri) that may have at least {@code threshold} hits in
+     * the window, or null when the retained sketches cannot tell.
+     */
+    public List<String> findUrisReaching(LocalDateTime start, LocalDateTime end, long threshold) {
+        Bounds bounds = bounds(start, end);
+        return bounds == null ? null : bounds.urisReaching(threshold);
+    }
+
+    private Bounds bounds(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime covered = coveredFrom;
+        if (!warmedUp || start.isBefore(covered)) {
+            return null;
+        }
+        Map<ViewKey, long[]> keys = new HashMap<>();
+        long[] untrackedBound = new long[1];
+        hourSketches.subMap(RollupGranularity.HOUR.floor(start), true, end, true).forEach((hour, sketch) -> {
+            boolean inside = !hour.isBefore(start) && !hour.plusHours(1).isAfter(end);
+            Map<ViewKey, SpaceSaving.Estimate> estimates;
+            synchronized (sketch) {
+                estimates = sketch.estimates();
+                untrackedBound[0] += sketch.untrackedBound();
+            }
+            estimates.forEach((key, estimate) -> {
+                long[] bound = keys.computeIfAbsent(key, k -> new long[2]);
+                bound[0] += inside ? estimate.lowerBound() : 0;
+                bound[1] += estimate.count();
+            });
+        });
+        return new Bounds(keys, untrackedBound[0]);
+    }
+
+    private void offer(LocalDateTime hour, ViewKey key, long weight) {
+        SpaceSaving<ViewKey> sketch = hourSketches.computeIfAbsent(hour, h -> new SpaceSaving<>(capacity));
+        synchronized (sketch) {
+            sketch.offer(key, weight);
+        }
+    }
+
+    private void evictBefore(LocalDateTime hour) {
+        if (hour.isAfter(coveredFrom)) {
+            coveredFrom = hour;
+            hourSketches.headMap(hour).clear();
+        }
+    }
+
+    /**
+     * Lower and upper bounds of the hits of the tracked keys in a window, and the upper bound of
+     * the hits of any key none of the sketches tracks.
+     */
+    private record Bounds(Map<ViewKey, long[]> keys, long untrackedBound) {
+        List<String> urisReaching(long threshold) {
+            if (untrackedBound > 0 && untrackedBound >= threshold) {
+                return null;
+            }
+            return keys.entrySet().stream()
+                    .filter(entry -> entry.getValue()[1] + untrackedBound >= threshold)
+                    .sorted(Comparator.comparingLong((Map.Entry<ViewKey, long[]> entry) -> entry.getValue()[1])
+                            .reversed())
+                    .map(entry -> entry.getKey().uri())
+                    .distinct()
+                    .toList();
+        }
+    }
+}
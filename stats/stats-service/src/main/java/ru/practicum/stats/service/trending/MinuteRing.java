@@ -0,0 +1,59 @@
+package ru.practicum.stats.service.trending;
+
+import java.util.Arrays;
+
+/**
+ * Per-minute hit counters for the most recent {@code counts.length} minutes of one key. Slots
+ * that fall out of the ring are zeroed as the head moves forward, so aging costs nothing until
+ * the key is touched again.
+ */
+class MinuteRing {
+    private final long[] counts;
+    private long headMinute = Long.MIN_VALUE;
+
+    MinuteRing(int minutes) {
+        counts = new long[minutes];
+    }
+
+    synchronized void add(long minute, long hits) {
+        advance(minute);
+        if (minute > headMinute - counts.length) {
+            counts[slot(minute)] += hits;
+        }
+    }
+
+    /**
+     * Sums the minutes in (toMinute - minutes, toMinute] after moving the head to toMinute.
+     */
+    synchronized long sum(long toMinute, int minutes) {
+        advance(toMinute);
+        long sum = 0;
+        for (long minute = Math.max(toMinute - minutes + 1, headMinute - counts.length + 1); minute <= toMinute;
+             minute++) {
+            sum += counts[slot(minute)];
+        }
+        return sum;
+    }
+
+    synchronized boolean isIdleSince(long minute) {
+        return headMinute <= minute - counts.length;
+    }
+
+    private void advance(long minute) {
+        if (minute <= headMinute) {
+            return;
+        }
+        if (headMinute == Long.MIN_VALUE || minute - headMinute >= counts.length) {
+            Arrays.fill(counts, 0);
+        } else {
+            for (long cleared = headMinute + 1; cleared <= minute; cleared++) {
+                counts[slot(cleared)] = 0;
+            }
+        }
+        headMinute = minute;
+    }
+
+    private int slot(long minute) {
+        return (int) Math.floorMod(minute, (long) counts.length);
+    }
+}
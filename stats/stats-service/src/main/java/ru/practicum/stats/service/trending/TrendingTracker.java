@@ -0,0 +1,131 @@
+package ru.practicum.stats.service.trending;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.ViewTrend;
+import ru.practicum.stats.service.HitJdbcRepository;
+import ru.practicum.stats.service.HitListener;
+import ru.practicum.stats.service.HitListenerGate;
+import ru.practicum.stats.service.RollupGranularity;
+import ru.practicum.stats.service.ViewKey;
+import ru.practicum.stats.service.exception.StatValidationException;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Per-minute hit counts of every (app, uri) seen in the last two {@code stat.trending.max-window}
+ * windows, updated on ingest. A trend compares the hits of the latest window with the window
+ * right before it, so the top movers are read from memory instead of two range aggregations.
+ */
+@Component
+@Slf4j
+public class TrendingTracker implements HitListener {
+    private static final Pattern WINDOW = Pattern.compile("(\\d{1,5})([mh])");
+    private static final long SECONDS_PER_MINUTE = 60;
+
+    private final HitJdbcRepository hitJdbcRepository;
+    private final HitListenerGate hitListenerGate;
+    private final int maxWindowMinutes;
+    private final int ringMinutes;
+    private final Map<ViewKey, MinuteRing> rings = new ConcurrentHashMap<>();
+    private volatile boolean warmedUp;
+
+    public TrendingTracker(HitJdbcRepository hitJdbcRepository,
+                           HitListenerGate hitListenerGate,
+                           @Value("${stat.trending.max-window:1h}") String maxWindow) {
+        this.hitJdbcRepository = hitJdbcRepository;
+        this.hitListenerGate = hitListenerGate;
+        this.maxWindowMinutes = parseMinutes(maxWindow);
+        // two windows plus a minute of slack for clocks running slightly ahead
+        this.ringMinutes = maxWindowMinutes * 2 + 1;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        LocalDateTime from = LocalDateTime.now().minusMinutes(ringMinutes);
+        hitListenerGate.read(started -> {
+            // from here on onHits adds every hit the minute rollups read below do not hold yet
+            warmedUp = true;
+            hitJdbcRepository.forEachRollup(RollupGranularity.MINUTE, from, (bucket, stats) -> {
+                started.run();
+                add(new ViewKey(stats.getApp(), stats.getUri()), bucket, stats.getHits());
+            });
+        });
+        log.info("STAT TRENDING: loaded {} keys from minute rollups since {}", rings.size(), from);
+    }
+
+    @Override
+    public void onHits(List<EndpointHitCreate> hits) {
+        if (!warmedUp) {
+            // stored before the warm-up, which reads them back from the rollups
+            return;
+        }
+        for (EndpointHitCreate hit : hits) {
+            add(new ViewKey(hit.getApp(), hit.getUri()), hit.getTimestamp(), 1);
+        }
+    }
+
+    public List<ViewTrend> findTrending(String window, int n) {
+        int minutes = parseMinutes(window);
+        if (minutes > maxWindowMinutes) {
+            throw new StatValidationException("Trending window " + window + " exceeds the maximum of "
+                    + maxWindowMinutes + " minutes");
+        }
+        long now = toMinute(LocalDateTime.now());
+        List<ViewTrend> trends = new ArrayList<>();
+        rings.forEach((key, ring) -> {
+            if (rings.computeIfPresent(key, (k, current) -> current.isIdleSince(now) ? null : current) == null) {
+                return;
+            }
+            long hits = ring.sum(now, minutes);
+            long previousHits = ring.sum(now - minutes, minutes);
+            if (hits > 0 || previousHits > 0) {
+                trends.add(new ViewTrend(key.app(), key.uri(), hits, previousHits, hits - previousHits));
+            }
+        });
+        return trends.stream()
+                .sorted(Comparator.comparing(ViewTrend::getChange).reversed()
+                        .thenComparing(Comparator.comparing(ViewTrend::getHits).reversed()))
+                .limit(n)
+                .toList();
+    }
+
+    private void add(ViewKey key, LocalDateTime timestamp, long hits) {
+        long minute = toMinute(timestamp);
+        long now = toMinute(LocalDateTime.now());
+        if (minute <= now - ringMinutes || minute > now + 1) {
+            return;
+        }
+        // added inside compute so that findTrending cannot drop the ring between the lookup and the add
+        rings.compute(key, (k, ring) -> {
+            MinuteRing target = ring == null ? new MinuteRing(ringMinutes) : ring;
+            target.add(minute, hits);
+            return target;
+        });
+    }
+
+    private static long toMinute(LocalDateTime timestamp) {
+        return Math.floorDiv(timestamp.toEpochSecond(ZoneOffset.UTC), SECONDS_PER_MINUTE);
+    }
+
+    private static int parseMinutes(String window) {
+        Matcher matcher = WINDOW.matcher(window == null ? "" : window);
+        if (!matcher.matches() || Integer.parseInt(matcher.group(1)) == 0) {
+            throw new StatValidationException("Window must be a positive number of minutes or hours like 15m or 1h");
+        }
+        int amount = Integer.parseInt(matcher.group(1));
+        return matcher.group(2).equals("h") ? amount * 60 : amount;
+    }
+}
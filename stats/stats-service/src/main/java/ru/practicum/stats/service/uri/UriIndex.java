@@ -0,0 +1,42 @@
+package ru.practicum.stats.service.uri;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.service.HitDictionary;
+import ru.practicum.stats.service.HitListener;
+
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UriIndex implements HitListener {
+    private final HitDictionary hitDictionary;
+    private final UriTrie trie = new UriTrie();
+
+    @PostConstruct
+    public void load() {
+        synchronized (trie) {
+            hitDictionary.uris().forEach(trie::add);
+        }
+        log.info("STAT URI INDEX: indexed {} uris", trie.size());
+    }
+
+    @Override
+    public void onHits(List<EndpointHitCreate> hits) {
+        synchronized (trie) {
+            hits.forEach(hit -> trie.add(hit.getUri()));
+        }
+    }
+
+    public List<String> findByPrefix(String prefix) {
+        return trie.findByPrefix(prefix);
+    }
+
+    public List<String> findByGlob(String glob) {
+        return trie.findByGlob(glob);
+    }
+}
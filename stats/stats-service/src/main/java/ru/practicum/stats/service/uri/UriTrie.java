@@ -0,0 +1,110 @@
+package ru.practicum.stats.service.uri;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Character trie of uris. Writers are serialized by the caller; readers run concurrently with
+ * a writer and see every uri whose insertion completed before the lookup started.
+ *
+ * <p>Glob patterns support {@code *} (any run of characters except {@code /}), {@code **} (any
+ * run of characters) and {@code ?} (one character except {@code /}).
+ */
+public class UriTrie {
+    private final Node root = new Node();
+    private volatile int size;
+
+    public void add(String uri) {
+        Node node = root;
+        for (int i = 0; i < uri.length(); i++) {
+            node = node.children.computeIfAbsent(uri.charAt(i), c -> new Node());
+        }
+        if (node.uri == null) {
+            node.uri = uri;
+            size++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public List<String> findByPrefix(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        List<String> uris = new ArrayList<>();
+        if (node == null) {
+            return uris;
+        }
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            Node current = pending.pop();
+            if (current.uri != null) {
+                uris.add(current.uri);
+            }
+            current.children.values().forEach(pending::push);
+        }
+        return uris;
+    }
+
+    public List<String> findByGlob(String glob) {
+        List<String> uris = new ArrayList<>();
+        Set<Visit> visited = new HashSet<>();
+        Deque<Visit> pending = new ArrayDeque<>();
+        pending.push(new Visit(root, 0));
+        while (!pending.isEmpty()) {
+            Visit visit = pending.pop();
+            if (!visited.add(visit)) {
+                continue;
+            }
+            Node node = visit.node();
+            int index = visit.index();
+            if (index == glob.length()) {
+                if (node.uri != null) {
+                    uris.add(node.uri);
+                }
+                continue;
+            }
+            char token = glob.charAt(index);
+            if (token == '*') {
+                boolean anyDepth = index + 1 < glob.length() && glob.charAt(index + 1) == '*';
+                int next = anyDepth ? index + 2 : index + 1;
+                pending.push(new Visit(node, next));
+                node.children.forEach((c, child) -> {
+                    if (anyDepth || c != '/') {
+                        pending.push(new Visit(child, index));
+                    }
+                });
+            } else if (token == '?') {
+                node.children.forEach((c, child) -> {
+                    if (c != '/') {
+                        pending.push(new Visit(child, index + 1));
+                    }
+                });
+            } else {
+                Node child = node.children.get(token);
+                if (child != null) {
+                    pending.push(new Visit(child, index + 1));
+                }
+            }
+        }
+        return uris;
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new ConcurrentHashMap<>();
+        private volatile String uri;
+    }
+
+    private record Visit(Node node, int index) {
+    }
+}
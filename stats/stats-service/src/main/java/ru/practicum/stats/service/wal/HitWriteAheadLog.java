@@ -0,0 +1,341 @@
+package ru.practicum.stats.service.wal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.service.HitListener;
+import ru.practicum.stats.service.HitListenerGate;
+import ru.practicum.stats.service.StatStorage;
+import ru.practicum.stats.service.exception.StatValidationException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Write-ahead log for hit ingestion. Hits are appended to memory-mapped segment files and
+ * acknowledged right away; a background flusher applies them to the storage in large batches
+ * and records the applied position in a checkpoint file. Segments left over from a crash are
+ * replayed from the checkpoint on startup. A batch the storage keeps rejecting is split in halves
+ * until the hits it still rejects one by one are isolated; those are written to the
+ * {@code quarantine} directory as NDJSON, which {@code stat.import.file} can load again, and the
+ * log moves past them. The parts of a split batch that were stored are remembered until the batch
+ * is checkpointed, so a retry after a connection failure stores only the rest.
+ */
+@Component
+@ConditionalOnProperty(name = "stat.wal.enabled", havingValue = "true")
+@Slf4j
+public class HitWriteAheadLog {
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String QUARANTINE_DIR = "quarantine";
+
+    private final StatStorage statStorage;
+    private final List<HitListener> hitListeners;
+    private final HitListenerGate hitListenerGate;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final int segmentSize;
+    private final int applyBatchSize;
+    private final long flushIntervalMs;
+    private final boolean forceOnWrite;
+    private final int maxApplyAttempts;
+    private final Object writeLock = new Object();
+    private final AtomicReference<WalPosition> written = new AtomicReference<>();
+    private final BitSet splitCommitted = new BitSet();
+    private FileChannel writeChannel;
+    private MappedByteBuffer writeBuffer;
+    private long writeSegment;
+    private WalPosition applied;
+    private WalPosition splitStart;
+    private ScheduledExecutorService flusher;
+
+    public HitWriteAheadLog(StatStorage statStorage,
+                            List<HitListener> hitListeners,
+                            HitListenerGate hitListenerGate,
+                            ObjectMapper objectMapper,
+                            @Value("${stat.wal.dir:stats-wal}") Path directory,
+                            @Value("${stat.wal.segment-size:67108864}") int segmentSize,
+                            @Value("${stat.wal.apply-batch-size:5000}") int applyBatchSize,
+                            @Value("${stat.wal.flush-interval-ms:500}") long flushIntervalMs,
+                            @Value("${stat.wal.force-on-write:false}") boolean forceOnWrite,
+                            @Value("${stat.wal.max-apply-attempts:5}") int maxApplyAttempts) {
+        this.statStorage = statStorage;
+        this.hitListeners = hitListeners;
+        this.hitListenerGate = hitListenerGate;
+        this.objectMapper = objectMapper;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.applyBatchSize = applyBatchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.forceOnWrite = forceOnWrite;
+        this.maxApplyAttempts = maxApplyAttempts;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> segments = listSegments();
+        applied = readCheckpoint(segments);
+        log.info("STAT WAL: replaying {} segments from {}", segments.size(), applied);
+        applyPending(null);
+
+        long lastSegment = Math.max(applied.segment(), segments.isEmpty() ? 0 : segments.getLast());
+        openSegment(lastSegment + 1);
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stat-wal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        flusher.shutdown();
+        flusher.awaitTermination(flushIntervalMs * 10, TimeUnit.MILLISECONDS);
+        applyPending(written.get());
+        synchronized (writeLock) {
+            writeBuffer.force();
+            writeChannel.close();
+        }
+        log.info("STAT WAL: stopped at {}", applied);
+    }
+
+    public void append(List<EndpointHitCreate> hits) {
+        List<byte[]> payloads = hits.stream().map(WalRecords::encode).toList();
+        synchronized (writeLock) {
+            for (byte[] payload : payloads) {
+                int size = WalRecords.size(payload);
+                if (size > segmentSize) {
+                    throw new StatValidationException("Hit record of " + size + " bytes does not fit into a WAL segment");
+                }
+                if (writeBuffer.remaining() < size) {
+                    rotate();
+                }
+                WalRecords.write(writeBuffer, payload);
+            }
+            if (forceOnWrite) {
+                writeBuffer.force();
+            }
+            written.set(new WalPosition(writeSegment, writeBuffer.position()));
+        }
+    }
+
+    private void flush() {
+        try {
+            applyPending(written.get());
+        } catch (Exception e) {
+            log.warn("STAT WAL: failed to apply segments from {}, will retry: {}", applied, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Applies records from the checkpoint up to the given position, or up to the end of the
+     * written data of every segment on disk when the position is null (startup replay).
+     */
+    private synchronized void applyPending(WalPosition limit) throws IOException {
+        while (true) {
+            Path path = segmentPath(applied.segment());
+            if (Files.exists(path)) {
+                boolean lastSegment = limit != null && applied.segment() == limit.segment();
+                applySegment(path, lastSegment ? limit.offset() : Integer.MAX_VALUE);
+                if (lastSegment) {
+                    return;
+                }
+            }
+            boolean segmentClosed = limit != null
+                    ? applied.segment() < limit.segment()
+                    : listSegments().stream().anyMatch(segment -> segment > applied.segment());
+            if (!segmentClosed) {
+                return;
+            }
+            WalPosition next = new WalPosition(applied.segment() + 1, 0);
+            writeCheckpoint(next);
+            applied = next;
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private void applySegment(Path path, int end) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.position(applied.offset());
+            List<EndpointHitCreate> batch = new ArrayList<>(applyBatchSize);
+            while (buffer.position() < end) {
+                EndpointHitCreate hit = WalRecords.read(buffer);
+                if (hit == null) {
+                    break;
+                }
+                batch.add(hit);
+                if (batch.size() == applyBatchSize) {
+                    apply(batch, new WalPosition(applied.segment(), buffer.position()));
+                }
+            }
+            apply(batch, new WalPosition(applied.segment(), buffer.position()));
+        }
+    }
+
+    private void apply(List<EndpointHitCreate> batch, WalPosition position) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (!applied.equals(splitStart)) {
+            splitStart = applied;
+            splitCommitted.clear();
+        }
+        List<EndpointHitCreate> hits = List.copyOf(batch);
+        List<EndpointHitCreate> rejected = new ArrayList<>();
+        hitListenerGate.write(() -> saveOrSplit(hits, 0, hits.size(), maxApplyAttempts, rejected));
+        if (rejected.isEmpty()) {
+            log.debug("STAT WAL: applied {} hits, checkpoint {}", hits.size(), position);
+        } else {
+            quarantine(rejected);
+        }
+        writeCheckpoint(position);
+        applied = position;
+        splitStart = null;
+        splitCommitted.clear();
+        batch.clear();
+    }
+
+    /**
+     * Saves the hits in [from, to) that are not committed yet and notifies the listeners of them. A
+     * rejected range is split in halves, which are tried once each, down to single hits that get all
+     * the attempts again and are added to {@code rejected} if they still fail. Committed hits are
+     * marked in {@link #splitCommitted}, so a connection failure thrown halfway through does not make
+     * the next flush store the halves that already went in a second time.
+     */
+    private void saveOrSplit(List<EndpointHitCreate> hits, int from, int to, int attempts,
+                             List<EndpointHitCreate> rejected) {
+        List<EndpointHitCreate> pending = new ArrayList<>(to - from);
+        for (int i = splitCommitted.nextClearBit(from); i < to; i = splitCommitted.nextClearBit(i + 1)) {
+            pending.add(hits.get(i));
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (save(pending, attempts)) {
+            splitCommitted.set(from, to);
+            hitListeners.forEach(listener -> listener.onHits(pending));
+        } else if (to - from == 1) {
+            rejected.addAll(pending);
+        } else {
+            int middle = (from + to) >>> 1;
+            saveOrSplit(hits, from, middle, middle - from == 1 ? maxApplyAttempts : 1, rejected);
+            saveOrSplit(hits, middle, to, to - middle == 1 ? maxApplyAttempts : 1, rejected);
+        }
+    }
+
+    /**
+     * Saves the hits, trying a batch the storage rejects up to {@code attempts} times. Returns false
+     * if it is still rejected; connection failures are thrown instead, so the flusher keeps retrying
+     * them until the database is back.
+     */
+    private boolean save(List<EndpointHitCreate> hits, int attempts) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                statStorage.saveAll(hits);
+                return true;
+            } catch (TransientDataAccessException | RecoverableDataAccessException
+                     | DataAccessResourceFailureException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                if (attempt >= attempts) {
+                    log.warn("STAT WAL: storage rejected {} hits from {} {} times: {}",
+                            hits.size(), applied, attempt, e.getMessage());
+                    return false;
+                }
+                log.warn("STAT WAL: storage rejected {} hits from {}, attempt {} of {}: {}",
+                        hits.size(), applied, attempt, attempts, e.getMessage());
+            }
+        }
+    }
+
+    private void quarantine(List<EndpointHitCreate> hits) throws IOException {
+        Path quarantine = Files.createDirectories(directory.resolve(QUARANTINE_DIR))
+                .resolve(String.format("%020d-%010d.ndjson", applied.segment(), applied.offset()));
+        List<String> lines = new ArrayList<>(hits.size());
+        for (EndpointHitCreate hit : hits) {
+            lines.add(objectMapper.writeValueAsString(hit));
+        }
+        Files.write(quarantine, lines, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        log.error("STAT WAL: moved {} rejected hits to {} and skipped them", hits.size(), quarantine);
+    }
+
+    private void rotate() {
+        writeBuffer.force();
+        try {
+            writeChannel.close();
+            openSegment(writeSegment + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to rotate WAL segment " + writeSegment, e);
+        }
+    }
+
+    private void openSegment(long segment) throws IOException {
+        writeChannel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeBuffer = writeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        writeSegment = segment;
+        written.set(new WalPosition(segment, 0));
+        log.info("STAT WAL: opened segment {}", segmentPath(segment));
+    }
+
+    private WalPosition readCheckpoint(List<Long> segments) throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            return new WalPosition(buffer.getLong(), buffer.getInt());
+        }
+        return new WalPosition(segments.isEmpty() ? 0 : segments.getFirst(), 0);
+    }
+
+    private void writeCheckpoint(WalPosition position) throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES)
+                .putLong(position.segment())
+                .putInt(position.offset());
+        Files.write(temporary, buffer.array(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        Files.move(temporary, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+}
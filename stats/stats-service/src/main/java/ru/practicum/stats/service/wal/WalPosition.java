@@ -0,0 +1,4 @@
+package ru.practicum.stats.service.wal;
+
+public record WalPosition(long segment, int offset) {
+}
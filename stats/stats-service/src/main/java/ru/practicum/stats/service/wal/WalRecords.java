@@ -0,0 +1,93 @@
+package ru.practicum.stats.service.wal;
+
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.service.exception.StatValidationException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary layout of one WAL record: [int length][int crc32c][payload], where the payload is
+ * [long epoch second][int nano][short app][short uri][short ip] with UTF-8 strings. The length
+ * is written last, so a zero length marks the end of the written part of a segment.
+ */
+final class WalRecords {
+    static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    private WalRecords() {
+    }
+
+    static byte[] encode(EndpointHitCreate hit) {
+        if (hit.getTimestamp() == null) {
+            throw new StatValidationException("timestamp must not be null");
+        }
+        byte[] app = hit.getApp().getBytes(StandardCharsets.UTF_8);
+        byte[] uri = hit.getUri().getBytes(StandardCharsets.UTF_8);
+        byte[] ip = hit.getIp().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(Long.BYTES + Integer.BYTES
+                + 3 * Short.BYTES + app.length + uri.length + ip.length);
+        payload.putLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        payload.putInt(hit.getTimestamp().getNano());
+        putString(payload, app);
+        putString(payload, uri);
+        putString(payload, ip);
+        return payload.array();
+    }
+
+    static void write(ByteBuffer segment, byte[] payload) {
+        int start = segment.position();
+        segment.position(start + HEADER_SIZE);
+        segment.put(payload);
+        segment.putInt(start + Integer.BYTES, checksum(payload));
+        segment.putInt(start, payload.length);
+    }
+
+    static int size(byte[] payload) {
+        return HEADER_SIZE + payload.length;
+    }
+
+    /**
+     * Reads the record at the buffer position and moves past it. Returns null at the end of
+     * the written data or on a torn record, leaving the position unchanged.
+     */
+    static EndpointHitCreate read(ByteBuffer segment) {
+        int start = segment.position();
+        if (segment.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        int length = segment.getInt(start);
+        if (length <= 0 || length > segment.remaining() - HEADER_SIZE) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        segment.get(start + HEADER_SIZE, payload);
+        if (checksum(payload) != segment.getInt(start + Integer.BYTES)) {
+            return null;
+        }
+        segment.position(start + HEADER_SIZE + length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+        return new EndpointHitCreate(getString(buffer), getString(buffer), getString(buffer), timestamp);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,65 @@
+CREATE TABLE IF NOT EXISTS hit_apps (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    name VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_hit_apps PRIMARY KEY (id),
+    CONSTRAINT uq_hit_apps_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS hit_uris (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    uri VARCHAR(512) NOT NULL,
+    resource_id BIGINT,
+    CONSTRAINT pk_hit_uris PRIMARY KEY (id),
+    CONSTRAINT uq_hit_uris_uri UNIQUE (uri)
+);
+
+CREATE TABLE IF NOT EXISTS hits (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip BYTEA NOT NULL,
+    created TIMESTAMP NOT NULL,
+    CONSTRAINT fk_hits_app FOREIGN KEY (app_id) REFERENCES hit_apps (id),
+    CONSTRAINT fk_hits_uri FOREIGN KEY (uri_id) REFERENCES hit_uris (id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hits_created ON hits (created);
+
+CREATE TABLE IF NOT EXISTS hit_rollups (
+    granularity VARCHAR(8) NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    hits BIGINT NOT NULL,
+    ip_sketch BYTEA,
+    CONSTRAINT pk_hit_rollups PRIMARY KEY (granularity, bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS hit_partitions (
+    partition_day DATE NOT NULL,
+    table_name VARCHAR(32) NOT NULL,
+    CONSTRAINT pk_hit_partitions PRIMARY KEY (partition_day)
+);
+
+CREATE TABLE IF NOT EXISTS hit_ips (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    ip BYTEA NOT NULL,
+    CONSTRAINT pk_hit_ips PRIMARY KEY (id),
+    CONSTRAINT uq_hit_ips_ip UNIQUE (ip)
+);
+
+CREATE TABLE IF NOT EXISTS hit_ip_bitmaps (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip_ids BYTEA NOT NULL,
+    CONSTRAINT pk_hit_ip_bitmaps PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS hit_import_progress (
+    file_name VARCHAR(1024) NOT NULL,
+    chunk_start BIGINT NOT NULL,
+    chunk_end BIGINT NOT NULL,
+    committed_offset BIGINT NOT NULL,
+    CONSTRAINT pk_hit_import_progress PRIMARY KEY (file_name, chunk_start)
+);
@@ -0,0 +1,94 @@
+package ru.practicum.stats.service.wal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.TransientDataAccessResourceException;
+import ru.practicum.stats.dto.EndpointHitCreate;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.dto.ViewTimeSeries;
+import ru.practicum.stats.service.HitListenerGate;
+import ru.practicum.stats.service.RollupGranularity;
+import ru.practicum.stats.service.StatStorage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that a split batch whose second half hits a connection failure stores the first half only
+ * once when the flusher retries it.
+ */
+class HitWriteAheadLogTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void retriesOnlyTheUncommittedHalfOfASplitBatch() throws Exception {
+        List<EndpointHitCreate> hits = IntStream.range(0, 4)
+                .mapToObj(i -> new EndpointHitCreate("ewm-main-service", "/events/" + i, "192.168.0." + i,
+                        START.plusMinutes(i)))
+                .toList();
+        SecondHalfFailingStorage storage = new SecondHalfFailingStorage(hits.getLast());
+        List<List<EndpointHitCreate>> notified = new CopyOnWriteArrayList<>();
+        HitWriteAheadLog wal = new HitWriteAheadLog(storage, List.of(notified::add), new HitListenerGate(),
+                new ObjectMapper().findAndRegisterModules(), directory, 1 << 16, hits.size(), 20, false, 2);
+
+        wal.start();
+        wal.append(hits);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (storage.saved.size() < hits.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        wal.stop();
+
+        assertThat(storage.transientFailures).isEqualTo(1);
+        assertThat(storage.saved).containsExactlyElementsOf(hits);
+        assertThat(notified).containsExactly(hits.subList(0, 2), hits.subList(2, 4));
+        assertThat(Files.exists(directory.resolve("quarantine"))).isFalse();
+    }
+
+    /**
+     * Rejects batches of more than two hits, so the log has to split them, and fails with a
+     * connection error the first time it is given {@code failOnce}.
+     */
+    private static class SecondHalfFailingStorage implements StatStorage {
+        private final EndpointHitCreate failOnce;
+        private final List<EndpointHitCreate> saved = new CopyOnWriteArrayList<>();
+        private volatile int transientFailures;
+
+        SecondHalfFailingStorage(EndpointHitCreate failOnce) {
+            this.failOnce = failOnce;
+        }
+
+        @Override
+        public void saveAll(List<EndpointHitCreate> hits) {
+            if (hits.size() > 2) {
+                throw new IllegalStateException("batch of " + hits.size() + " hits rejected");
+            }
+            if (transientFailures == 0 && hits.contains(failOnce)) {
+                transientFailures++;
+                throw new TransientDataAccessResourceException("connection lost");
+            }
+            saved.addAll(hits);
+        }
+
+        @Override
+        public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<ViewTimeSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                  RollupGranularity step, boolean unique) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}